@@ -0,0 +1,205 @@
+package ArgumentObfuscator;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.type.PrimitiveType;
+
+/**
+ * Classes which carry the hidden arguments of a call, one for each kind of
+ * parameter list. A method f(String s, int i) becomes f(AgLI x), its calls
+ * f(new AgLI(s, i)), and the body reads the arguments back from the final
+ * fields of the carrier: one allocation per call and no boxing, where Ag
+ * needed a list and a boxed value for every argument.
+ *
+ * A carrier is named after its parameters, a letter each as in class file
+ * descriptors: Z B C S I J F D for the primitives and L for any other type.
+ * Reference parameters are held as Object and cast back in the method, as the
+ * carrier cannot see the imports of the files using it. The same parameters
+ * always give the same name, so output from earlier runs stays valid.
+ *
+ * Calls are matched to declarations by name and number of arguments only.
+ * Where one name has two or more declarations with the same number of
+ * parameters, or takes varargs, neither its declarations nor its calls are
+ * changed: show(String) and show(Integer) would both become show(AgL), and
+ * a method of a subclass could come to override one it only overloaded.
+ */
+public class ArgumentCarriers {
+
+	public static final String PREFIX = "Ag";
+
+	// Letter of a parameter which is not a primitive
+	private static final char REFERENCE = 'L';
+
+	// Marks a parameter list that no carrier can stand in for
+	private static final char UNSUPPORTED = '*';
+
+	// Method name to number of parameters to carrier
+	private final Map<String, Map<Integer, String>> carriers = new HashMap<String, Map<Integer, String>>();
+
+	/**
+	 * @param namesOfMethodsToModify
+	 *            Methods to hide the arguments of.
+	 * @param methodSignatures
+	 *            Signatures of the declarations in the project, as made by
+	 *            signatureOf, one for each declaration.
+	 */
+	public ArgumentCarriers(Set<String> namesOfMethodsToModify, Collection<String> methodSignatures) {
+		Set<String> excluded = new HashSet<String>();
+		for (String signature : methodSignatures) {
+			int open = signature.indexOf('(');
+			String name = signature.substring(0, open);
+			String code = signature.substring(open + 1, signature.length() - 1);
+			if (!namesOfMethodsToModify.contains(name)) {
+				continue;
+			}
+			if (code.indexOf(UNSUPPORTED) >= 0) {
+				excluded.add(name);
+				continue;
+			}
+			Map<Integer, String> byArity = carriers.get(name);
+			if (byArity == null) {
+				byArity = new HashMap<Integer, String>();
+				carriers.put(name, byArity);
+			}
+			if (byArity.containsKey(code.length())) {
+				excluded.add(name);
+			} else {
+				byArity.put(code.length(), PREFIX + code);
+			}
+		}
+		carriers.keySet().removeAll(excluded);
+	}
+
+	/**
+	 * Signature of a declaration as name(code), e.g. f(LI) for f(String s,
+	 * int i).
+	 */
+	public static String signatureOf(MethodDeclaration m) {
+		StringBuilder sb = new StringBuilder(m.getName()).append('(');
+		for (Parameter p : m.getParameters()) {
+			if (p.isVarArgs() || p.getId().getArrayCount() > 0) {
+				// Varargs match calls of any length, and int a[] would need
+				// its brackets moved onto the type
+				sb.append(UNSUPPORTED);
+			} else if (p.getType() instanceof PrimitiveType) {
+				sb.append(letterOf(((PrimitiveType) p.getType()).getType()));
+			} else {
+				sb.append(REFERENCE);
+			}
+		}
+		return sb.append(')').toString();
+	}
+
+	/**
+	 * Carrier of the calls to a method with this many arguments, or null if
+	 * they are left as they are.
+	 */
+	public String getCarrier(String methodName, int argumentCount) {
+		Map<Integer, String> byArity = carriers.get(methodName);
+		return byArity != null ? byArity.get(argumentCount) : null;
+	}
+
+	/** Whether a parameter of a carrier is a primitive */
+	public static boolean isPrimitive(String carrier, int index) {
+		return carrier.charAt(PREFIX.length() + index) != REFERENCE;
+	}
+
+	/** Name of the field holding an argument */
+	public static String getField(int index) {
+		return "a" + index;
+	}
+
+	/**
+	 * Carriers used for a method, e.g. "{1=AgL, 2=AgLI}", for telling whether
+	 * the output of a file which calls it is still valid.
+	 */
+	public String describe(String methodName) {
+		Map<Integer, String> byArity = carriers.get(methodName);
+		return byArity == null ? "" : new TreeMap<Integer, String>(byArity).toString();
+	}
+
+	/** Names of the methods whose arguments may be hidden */
+	public Set<String> getMethodNames() {
+		return carriers.keySet();
+	}
+
+	/** Names of every carrier used, sorted */
+	public Set<String> getClassNames() {
+		Set<String> names = new TreeSet<String>();
+		for (Map<Integer, String> byArity : carriers.values()) {
+			names.addAll(byArity.values());
+		}
+		return names;
+	}
+
+	/** Source of a carrier class */
+	public static String toSource(String packageName, String carrier) {
+		String code = carrier.substring(PREFIX.length());
+		StringBuilder fields = new StringBuilder();
+		StringBuilder params = new StringBuilder();
+		StringBuilder assignments = new StringBuilder();
+		for (int i = 0; i < code.length(); i++) {
+			String type = typeOf(code.charAt(i));
+			fields.append("\tpublic final ").append(type).append(' ').append(getField(i)).append(";\n");
+			if (i > 0) {
+				params.append(", ");
+			}
+			params.append(type).append(' ').append(getField(i));
+			assignments.append("\t\tthis.").append(getField(i)).append(" = ").append(getField(i)).append(";\n");
+		}
+		return "package " + packageName + ";\n\npublic final class " + carrier + " {\n" + fields + "\n\tpublic "
+				+ carrier + "(" + params + ") {\n" + assignments + "\t}\n}\n";
+	}
+
+	private static char letterOf(PrimitiveType.Primitive primitive) {
+		switch (primitive) {
+		case Boolean:
+			return 'Z';
+		case Char:
+			return 'C';
+		case Byte:
+			return 'B';
+		case Short:
+			return 'S';
+		case Int:
+			return 'I';
+		case Long:
+			return 'J';
+		case Float:
+			return 'F';
+		default:
+			return 'D';
+		}
+	}
+
+	private static String typeOf(char letter) {
+		switch (letter) {
+		case 'Z':
+			return "boolean";
+		case 'C':
+			return "char";
+		case 'B':
+			return "byte";
+		case 'S':
+			return "short";
+		case 'I':
+			return "int";
+		case 'J':
+			return "long";
+		case 'F':
+			return "float";
+		case 'D':
+			return "double";
+		default:
+			return "Object";
+		}
+	}
+}
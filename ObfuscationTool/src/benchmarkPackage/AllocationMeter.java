@@ -0,0 +1,89 @@
+package benchmarkPackage;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * Counts the bytes allocated on the heap by every thread, including the
+ * threads of the obfuscation pool. The count is the growth of the heap plus
+ * everything the garbage collector freed, the same churn that a GC profiler
+ * reports, so it is only accurate over several iterations.
+ */
+public class AllocationMeter implements NotificationListener {
+
+	// Longest a reading waits for notifications of earlier collections
+	private static final long MAX_WAIT_NANOS = 100 * 1000000L;
+
+	private final AtomicLong collected = new AtomicLong();
+	private final AtomicLong notifications = new AtomicLong();
+
+	public AllocationMeter() {
+		notifications.set(getCollectionCount());
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			if (gc instanceof NotificationEmitter) {
+				((NotificationEmitter) gc).addNotificationListener(this, null, null);
+			}
+		}
+	}
+
+	/** Bytes allocated since the meter was created */
+	public long getAllocatedBytes() {
+		// Notifications arrive on another thread after the collection, so
+		// wait a little for those of the collections counted so far. Some
+		// collections, e.g. concurrent G1 cycles, may never be notified, so
+		// the wait is bounded and what is missing is not waited for again.
+		long collections = getCollectionCount();
+		long deadline = System.nanoTime() + MAX_WAIT_NANOS;
+		while (notifications.get() < collections && System.nanoTime() < deadline) {
+			Thread.yield();
+		}
+		long seen;
+		while ((seen = notifications.get()) < collections && !notifications.compareAndSet(seen, collections)) {
+			// Raced with a notification, try again
+		}
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() + collected.get();
+	}
+
+	private static long getCollectionCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+		}
+		return count;
+	}
+
+	@Override
+	public void handleNotification(Notification notification, Object handback) {
+		if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+			return;
+		}
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+				.from((CompositeData) notification.getUserData());
+		// Objects moved into the old generation are not freed, so only the
+		// drop of the whole heap counts
+		Map<String, MemoryUsage> before = info.getGcInfo().getMemoryUsageBeforeGc();
+		Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+		long freed = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && before.containsKey(pool.getName())) {
+				freed += before.get(pool.getName()).getUsed() - after.get(pool.getName()).getUsed();
+			}
+		}
+		if (freed > 0) {
+			collected.addAndGet(freed);
+		}
+		notifications.incrementAndGet();
+	}
+}
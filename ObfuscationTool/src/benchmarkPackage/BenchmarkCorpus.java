@@ -0,0 +1,117 @@
+package benchmarkPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Writes a small Android project for the benchmarks to run on. The project is
+ * generated from a fixed seed, so every run measures exactly the same source.
+ * Each size has files of a different length, from a few methods to several
+ * thousand lines.
+ */
+public enum BenchmarkCorpus {
+
+	SMALL(40, 3), MEDIUM(20, 30), HUGE(4, 300);
+
+	public static final String ROOT_PACKAGE = "com.example.bench";
+
+	private static final String[] PACKAGES = { "ui", "data", "util" };
+	private static final String[] WORDS = { "task", "location", "fence", "radius", "notify", "enter", "leave",
+			"title", "remind", "address" };
+
+	private final int numberOfFiles;
+	private final int methodsPerFile;
+
+	private BenchmarkCorpus(int numberOfFiles, int methodsPerFile) {
+		this.numberOfFiles = numberOfFiles;
+		this.methodsPerFile = methodsPerFile;
+	}
+
+	/**
+	 * Writes the project into a folder laid out like an Android Studio
+	 * project, with app/build.gradle, the manifest and app/src/main/java.
+	 */
+	public void write(File projectDir) throws IOException {
+		Random random = new Random(numberOfFiles * 31 + methodsPerFile);
+		File mainDir = new File(projectDir, "app/src/main");
+		File javaDir = new File(mainDir, "java/" + ROOT_PACKAGE.replace('.', '/'));
+
+		StringBuilder manifest = new StringBuilder();
+		manifest.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+		manifest.append("<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\"\n");
+		manifest.append("    package=\"" + ROOT_PACKAGE + "\">\n");
+		manifest.append("    <application android:label=\"Bench\">\n");
+
+		for (int i = 0; i < numberOfFiles; i++) {
+			String pkg = PACKAGES[i % PACKAGES.length];
+			String className = getClassName(i);
+			if (pkg.equals("ui")) {
+				manifest.append("        <activity android:name=\"." + pkg + "." + className + "\" />\n");
+			}
+			FileUtils.writeStringToFile(new File(javaDir, pkg + "/" + className + ".java"),
+					writeClass(i, pkg, className, random), "UTF-8");
+		}
+
+		manifest.append("    </application>\n");
+		manifest.append("</manifest>\n");
+		FileUtils.writeStringToFile(new File(mainDir, "AndroidManifest.xml"), manifest.toString(), "UTF-8");
+		FileUtils.writeStringToFile(new File(projectDir, "app/build.gradle"),
+				"android {\n    buildTypes {\n        release {\n            minifyEnabled false\n        }\n    }\n}\n",
+				"UTF-8");
+	}
+
+	private String getClassName(int i) {
+		String pkg = PACKAGES[i % PACKAGES.length];
+		if (pkg.equals("ui")) {
+			return "Screen" + i + "Activity";
+		}
+		return (pkg.equals("data") ? "Record" : "Helper") + i;
+	}
+
+	private String writeClass(int i, String pkg, String className, Random random) {
+		// Refer to the next class in another package so the renames and the
+		// flattened packages have something to change
+		int next = (i + 1) % numberOfFiles;
+		String nextPkg = PACKAGES[next % PACKAGES.length];
+		String nextClass = getClassName(next);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("package " + ROOT_PACKAGE + "." + pkg + ";\n\n");
+		sb.append("import java.util.ArrayList;\n");
+		sb.append("import java.util.List;\n\n");
+		if (!nextPkg.equals(pkg)) {
+			sb.append("import " + ROOT_PACKAGE + "." + nextPkg + "." + nextClass + ";\n\n");
+		}
+		sb.append("public class " + className + " {\n\n");
+		sb.append("\tprivate static final String TAG = \"" + className + "\";\n");
+		sb.append("\tprivate List<String> entries = new ArrayList<String>();\n\n");
+
+		for (int m = 0; m < methodsPerFile; m++) {
+			String word = WORDS[random.nextInt(WORDS.length)];
+			String other = WORDS[random.nextInt(WORDS.length)];
+			sb.append("\tpublic int " + word + m + "(int count, String label) {\n");
+			sb.append("\t\tString message = \"" + word + " " + m + " of " + className + "\";\n");
+			sb.append("\t\tint total = 0;\n");
+			sb.append("\t\tfor (int i = 0; i < count; i++) {\n");
+			sb.append("\t\t\ttotal += i * " + (m + 1) + ";\n");
+			sb.append("\t\t}\n");
+			sb.append("\t\tif (label.equals(\"" + other + " " + m + "\")) {\n");
+			sb.append("\t\t\ttotal += " + other + "Helper" + m + "(total, \"" + other + " note\");\n");
+			sb.append("\t\t} else if (total > " + random.nextInt(1000) + ") {\n");
+			sb.append("\t\t\tentries.add(TAG + message + label);\n");
+			sb.append("\t\t} else {\n");
+			sb.append("\t\t\tentries.add(" + nextClass + ".class.getName());\n");
+			sb.append("\t\t}\n");
+			sb.append("\t\treturn total;\n");
+			sb.append("\t}\n\n");
+			sb.append("\tprivate int " + other + "Helper" + m + "(int value, String note) {\n");
+			sb.append("\t\treturn value + note.length();\n");
+			sb.append("\t}\n\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+}
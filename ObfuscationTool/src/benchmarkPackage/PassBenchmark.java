@@ -0,0 +1,362 @@
+package benchmarkPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+
+import ArgumentObfuscator.ArgumentCarriers;
+import ArgumentObfuscator.ArgumentObfuscator;
+import classPackageObfuscate.ClassRenameVisitor;
+import classPackageObfuscate.ClassRenamer;
+import classPackageObfuscate.PackageFlattenVisitor;
+import classPackageObfuscate.PackageFlattener;
+import classPackageObfuscate.SourceFiles;
+import encryptorPackage.FileWalker;
+import encryptorPackage.ObfuscationCoordinator;
+import encryptorPackage.ObfuscationPlan;
+import encryptorPackage.SourceSet;
+import encryptorPackage.StringEncryptionVisitor;
+import encryptorPackage.StringMode;
+import encryptorPackage.SymbolIndex;
+import encryptorPackage.TryCatchReplacer;
+
+/**
+ * Measures how fast each obfuscation pass, and the whole pipeline, runs over
+ * the benchmark corpora. Every iteration works on a fresh copy of the corpus
+ * since the passes change it; only the pass itself is timed. The passes are
+ * the ones the pipeline runs, so all but TryCatchReplacer are given the files
+ * parsed beforehand, and ArgumentObfuscator times the index, the carriers and
+ * obfuscateArguments rather than the removed file-based ObfuscateArguments.
+ *
+ * <pre>
+ * java benchmarkPackage.PassBenchmark [--warmup &lt;n&gt;] [--iterations &lt;n&gt;]
+ *     [--corpus small,medium,huge,synthetic&lt;classes&gt;] [--pass StringReplacer,...] [--threads &lt;n&gt;]
+ * </pre>
+ *
+ * A corpus such as synthetic5000 is a SyntheticProject of that many classes,
+ * so runs over several sizes show how time and allocation grow with them.
+ *
+ * Results are printed as tab separated lines with the throughput in files and
+ * megabytes of source per second, and the bytes allocated per run.
+ */
+public class PassBenchmark {
+
+	private static final String KEY = "benchmarkbenchmarkbenchmarkbench";
+
+	// Prefix of the synthetic corpora
+	private static final String SYNTHETIC = "synthetic";
+
+	/** A pass over a copied project */
+	interface Pass {
+		String getName();
+
+		/** Untimed preparation of the copy, e.g. reading the manifest */
+		void setUp(File projectDir) throws Exception;
+
+		void run(File projectDir) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int warmup = 5;
+		int iterations = 10;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> corpora = Arrays.asList("small", "medium", "huge");
+		List<String> passNames = null;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--warmup") && i + 1 < args.length) {
+				warmup = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--iterations") && i + 1 < args.length) {
+				iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--corpus") && i + 1 < args.length) {
+				corpora = Arrays.asList(args[++i].toLowerCase().split(","));
+			} else if (args[i].equals("--pass") && i + 1 < args.length) {
+				passNames = Arrays.asList(args[++i].split(","));
+			} else {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		List<Pass> passes = new ArrayList<Pass>();
+		for (Pass pass : getPasses(threads)) {
+			if (passNames == null || passNames.contains(pass.getName())) {
+				passes.add(pass);
+			}
+		}
+
+		File workDir = new File(System.getProperty("java.io.tmpdir"), "obfuscation-benchmark");
+		FileUtils.deleteDirectory(workDir);
+		AllocationMeter meter = new AllocationMeter();
+
+		System.out.println("pass\tcorpus\tfiles/s\t+-\tMB/s\t+-\tallocated MB/op\tallocation MB/s");
+		try {
+			for (String corpusName : corpora) {
+				File corpusDir = new File(workDir, corpusName);
+				writeCorpus(corpusName, corpusDir);
+
+				Collection<File> javaFiles = FileUtils.listFiles(corpusDir, new String[] { "java" }, true);
+				long bytes = 0;
+				for (File f : javaFiles) {
+					bytes += f.length();
+				}
+
+				for (Pass pass : passes) {
+					double[] seconds = new double[iterations];
+					long allocated = 0;
+					for (int i = -warmup; i < iterations; i++) {
+						File copyDir = new File(workDir, "run");
+						FileUtils.deleteDirectory(copyDir);
+						FileUtils.copyDirectory(corpusDir, copyDir);
+
+						long allocatedBefore = meter.getAllocatedBytes();
+						long time = runQuietly(pass, copyDir);
+						if (i >= 0) {
+							seconds[i] = time / 1e9;
+							allocated += meter.getAllocatedBytes() - allocatedBefore;
+						}
+					}
+					report(pass.getName(), corpusName, javaFiles.size(), bytes, seconds, allocated);
+				}
+			}
+		} finally {
+			FileUtils.deleteDirectory(workDir);
+		}
+	}
+
+	// Writes one of the fixed corpora, or a synthetic project of as many
+	// classes as the name says, e.g. synthetic2000.
+	private static void writeCorpus(String corpusName, File corpusDir) throws IOException {
+		if (corpusName.startsWith(SYNTHETIC)) {
+			new SyntheticProject(Integer.parseInt(corpusName.substring(SYNTHETIC.length()))).write(corpusDir);
+		} else {
+			BenchmarkCorpus.valueOf(corpusName.toUpperCase()).write(corpusDir);
+		}
+	}
+
+	// Runs the pass with its console output thrown away, and returns the
+	// nanoseconds it took without the set up.
+	private static long runQuietly(Pass pass, File projectDir) throws Exception {
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new NullOutputStream()));
+		try {
+			pass.setUp(projectDir);
+			long start = System.nanoTime();
+			pass.run(projectDir);
+			return System.nanoTime() - start;
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	private static void report(String pass, String corpus, int files, long bytes, double[] seconds, long allocated) {
+		double[] filesPerSecond = new double[seconds.length];
+		double[] megabytesPerSecond = new double[seconds.length];
+		double totalSeconds = 0;
+		for (int i = 0; i < seconds.length; i++) {
+			filesPerSecond[i] = files / seconds[i];
+			megabytesPerSecond[i] = bytes / seconds[i] / (1024 * 1024);
+			totalSeconds += seconds[i];
+		}
+		double megabytesAllocated = allocated / (1024.0 * 1024.0);
+		System.out.println(String.format("%s\t%s\t%.1f\t%.1f\t%.2f\t%.2f\t%.1f\t%.1f", pass, corpus,
+				mean(filesPerSecond), deviation(filesPerSecond), mean(megabytesPerSecond),
+				deviation(megabytesPerSecond), megabytesAllocated / seconds.length, megabytesAllocated / totalSeconds));
+	}
+
+	private static double mean(double[] values) {
+		double sum = 0;
+		for (double v : values) {
+			sum += v;
+		}
+		return sum / values.length;
+	}
+
+	private static double deviation(double[] values) {
+		if (values.length < 2) {
+			return 0;
+		}
+		double mean = mean(values);
+		double sum = 0;
+		for (double v : values) {
+			sum += (v - mean) * (v - mean);
+		}
+		return Math.sqrt(sum / (values.length - 1));
+	}
+
+	private static File getJavaDir(File projectDir) {
+		return new File(projectDir, "app/src/main/java");
+	}
+
+	private static Collection<File> getJavaFiles(File projectDir) {
+		return FileUtils.listFiles(getJavaDir(projectDir), new String[] { "java" }, true);
+	}
+
+	private static List<CompilationUnit> parseJavaFiles(File projectDir) throws Exception {
+		List<CompilationUnit> compilationUnits = new ArrayList<CompilationUnit>();
+		for (File f : getJavaFiles(projectDir)) {
+			compilationUnits.add(JavaParser.parse(new StringReader(SourceFiles.read(f)), true));
+		}
+		return compilationUnits;
+	}
+
+	private static List<Pass> getPasses(final int threads) {
+		List<Pass> passes = new ArrayList<Pass>();
+
+		passes.add(new Pass() {
+			private List<CompilationUnit> compilationUnits;
+
+			public String getName() {
+				return "StringReplacer";
+			}
+
+			// The passes other than TryCatchReplacer work on parsed files, so
+			// parsing is left out
+			public void setUp(File projectDir) throws Exception {
+				compilationUnits = parseJavaFiles(projectDir);
+			}
+
+			public void run(File projectDir) {
+				for (CompilationUnit cu : compilationUnits) {
+					List<ObfuscationPlan.LiteralPlan> literals = StringEncryptionVisitor.planLiterals(cu,
+							StringMode.INLINE);
+					cu.accept(new StringEncryptionVisitor(KEY, literals), null);
+				}
+			}
+		});
+
+		passes.add(new Pass() {
+			public String getName() {
+				return "TryCatchReplacer";
+			}
+
+			public void setUp(File projectDir) {
+			}
+
+			public void run(File projectDir) {
+				for (File f : getJavaFiles(projectDir)) {
+					TryCatchReplacer.Replace(f);
+				}
+			}
+		});
+
+		passes.add(new Pass() {
+			private List<CompilationUnit> compilationUnits;
+
+			public String getName() {
+				return "ClassRenamer";
+			}
+
+			public void setUp(File projectDir) throws Exception {
+				ClassRenamer.reset();
+				ClassRenamer.readManifest(SourceFiles.read(new File(projectDir, "app/src/main/AndroidManifest.xml")));
+				compilationUnits = parseJavaFiles(projectDir);
+			}
+
+			public void run(File projectDir) {
+				ClassRenameVisitor visitor = new ClassRenameVisitor(ClassRenamer.getComponentNames());
+				for (CompilationUnit cu : compilationUnits) {
+					cu.accept(visitor, null);
+				}
+			}
+		});
+
+		passes.add(new Pass() {
+			private List<CompilationUnit> compilationUnits;
+			private Set<String> packages;
+
+			public String getName() {
+				return "PackageFlattener";
+			}
+
+			public void setUp(File projectDir) throws Exception {
+				FileWalker walker = new FileWalker(getJavaDir(projectDir).getPath());
+				walker.walk();
+				packages = new HashSet<String>(walker.getPackages());
+				packages.add(BenchmarkCorpus.ROOT_PACKAGE);
+				compilationUnits = parseJavaFiles(projectDir);
+			}
+
+			public void run(File projectDir) {
+				PackageFlattenVisitor visitor = new PackageFlattenVisitor(packages, "xyz");
+				for (CompilationUnit cu : compilationUnits) {
+					cu.accept(visitor, null);
+				}
+			}
+		});
+
+		passes.add(new Pass() {
+			private List<CompilationUnit> compilationUnits;
+
+			public String getName() {
+				return "ArgumentObfuscator";
+			}
+
+			public void setUp(File projectDir) throws Exception {
+				compilationUnits = parseJavaFiles(projectDir);
+			}
+
+			public void run(File projectDir) {
+				SymbolIndex index = new SymbolIndex();
+				for (CompilationUnit cu : compilationUnits) {
+					index.add(cu);
+				}
+				ArgumentCarriers carriers = new ArgumentCarriers(index.getMethodsToModify(),
+						index.getMethodSignatures());
+				for (CompilationUnit cu : compilationUnits) {
+					ArgumentObfuscator.obfuscateArguments(cu, carriers);
+				}
+			}
+		});
+
+		passes.add(new Pass() {
+			public String getName() {
+				return "Pipeline";
+			}
+
+			public void setUp(File projectDir) throws Exception {
+				ClassRenamer.reset();
+				PackageFlattener.reset();
+				ClassRenamer.renameClassesInXML(projectDir.getAbsolutePath());
+			}
+
+			public void run(File projectDir) throws Exception {
+				ObfuscationCoordinator.Obfuscate(new File(projectDir, "app/src/main").getPath(), true, threads);
+			}
+		});
+
+		passes.add(new Pass() {
+			private SourceSet sources;
+
+			public String getName() {
+				return "InMemoryPipeline";
+			}
+
+			// Reads the project into memory, so the run does not touch the disk
+			public void setUp(File projectDir) throws Exception {
+				sources = new SourceSet(SourceSet.fromDirectory(new File(projectDir, "app/src/main")).toMap());
+			}
+
+			public void run(File projectDir) throws Exception {
+				ObfuscationCoordinator.ObfuscateSources(sources, true, threads, StringMode.INLINE);
+			}
+		});
+
+		return passes;
+	}
+}
@@ -0,0 +1,375 @@
+package benchmarkPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Writes an Android style project of any size, for seeing how the passes
+ * scale well beyond GeofenceTasker. The same settings and seed always give
+ * the same project, and its sources compile with javac alone.
+ *
+ * Classes are spread over packages nested up to a given depth and refer to
+ * classes of other packages. Some are activities, services, receivers and
+ * providers named in the manifest, some are custom views used in layouts,
+ * some are made of string literals. Every class has a chain of nested
+ * if/else statements, methods with many parameters of mixed types and calls
+ * nested in the arguments of other calls.
+ *
+ * <pre>
+ * java benchmarkPackage.SyntheticProject [--classes &lt;n&gt;] [--depth &lt;n&gt;] [--methods &lt;n&gt;]
+ *     [--if-depth &lt;n&gt;] [--parameters &lt;n&gt;] [--seed &lt;n&gt;] &lt;output&gt;
+ * </pre>
+ */
+public class SyntheticProject {
+
+	public static final String ROOT_PACKAGE = BenchmarkCorpus.ROOT_PACKAGE;
+
+	private static final String[] WORDS = { "task", "location", "fence", "radius", "notify", "enter", "leave",
+			"title", "remind", "address", "sync", "account", "map", "alarm", "route", "event" };
+
+	// Component kinds, each the tag naming it in the manifest
+	private static final String[] COMPONENTS = { "Activity", "Service", "Receiver", "Provider" };
+	private static final String[] TAGS = { "activity", "service", "receiver", "provider" };
+	private static final String[] PLAIN = { "Repository", "Formatter", "Model", "Helper" };
+
+	// Parameter types of the wide methods, with an argument of each
+	private static final String[] TYPES = { "int", "String", "long", "double", "boolean", "char", "float",
+			"List<String>", "short", "byte" };
+	private static final String[] ARGUMENTS = { "7", "\"wide\"", "8L", "1.5", "true", "'w'", "2.5f", "log",
+			"(short) 3", "(byte) 4" };
+
+	// Literals of the string heavy classes, with escapes the encryption must
+	// keep
+	private static final String[] LITERALS = { "%s entered %s", "Tab\\tseparated", "Line\\nbreak",
+			"\\\"Quoted\\\"", "C:\\\\path\\\\to", "caf\\u00e9 \\u2603", "", " ", "100%", "{\\\"json\\\": true}" };
+
+	// Every nth class is of a kind
+	private static final int COMPONENT_EVERY = 5;
+	private static final int VIEW_EVERY = 20;
+	private static final int STRINGS_EVERY = 8;
+
+	private static final int LITERALS_PER_STRING_CLASS = 150;
+
+	// Number of packages below each package
+	private static final int FAN_OUT = 4;
+
+	private final int classes;
+	private int depth = 8;
+	private int methods = 4;
+	private int ifDepth = 12;
+	private int parameters = 12;
+	private long seed = 42;
+
+	public SyntheticProject(int classes) {
+		this.classes = Math.max(1, classes);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int classes = 1000;
+		int depth = -1, methods = -1, ifDepth = -1, parameters = -1;
+		long seed = -1;
+		File output = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--classes") && i + 1 < args.length) {
+				classes = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--depth") && i + 1 < args.length) {
+				depth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--methods") && i + 1 < args.length) {
+				methods = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--if-depth") && i + 1 < args.length) {
+				ifDepth = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--parameters") && i + 1 < args.length) {
+				parameters = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--seed") && i + 1 < args.length) {
+				seed = Long.parseLong(args[++i]);
+			} else if (!args[i].startsWith("--") && output == null) {
+				output = new File(args[i]);
+			} else {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+		if (output == null) {
+			System.err.println("No output folder given");
+			System.exit(2);
+		}
+
+		SyntheticProject project = new SyntheticProject(classes);
+		if (depth >= 0) {
+			project.setDepth(depth);
+		}
+		if (methods >= 0) {
+			project.setMethods(methods);
+		}
+		if (ifDepth >= 0) {
+			project.setIfDepth(ifDepth);
+		}
+		if (parameters >= 0) {
+			project.setParameters(parameters);
+		}
+		if (seed >= 0) {
+			project.setSeed(seed);
+		}
+		project.write(output);
+	}
+
+	/** Deepest package below the root package, 8 by default */
+	public void setDepth(int depth) {
+		this.depth = Math.max(1, depth);
+	}
+
+	/** Plain methods of each class, 4 by default */
+	public void setMethods(int methods) {
+		this.methods = Math.max(0, methods);
+	}
+
+	/** Ifs nested in the chain of each class, 12 by default */
+	public void setIfDepth(int ifDepth) {
+		this.ifDepth = Math.max(1, ifDepth);
+	}
+
+	/** Parameters of the wide methods, 12 by default */
+	public void setParameters(int parameters) {
+		this.parameters = Math.max(1, parameters);
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Writes the project into a folder laid out like an Android Studio
+	 * project, with app/build.gradle, the manifest, app/src/main/java and
+	 * app/src/main/res.
+	 */
+	public void write(File projectDir) throws IOException {
+		Random random = new Random(seed);
+		File mainDir = new File(projectDir, "app/src/main");
+		File javaDir = new File(mainDir, "java");
+
+		StringBuilder manifest = new StringBuilder();
+		manifest.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+		manifest.append("<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\"\n");
+		manifest.append("    package=\"" + ROOT_PACKAGE + "\">\n");
+		manifest.append("    <application android:label=\"@string/app_name\">\n");
+
+		for (int i = 0; i < classes; i++) {
+			String pkg = getPackage(i);
+			String className = getClassName(i);
+			if (i % COMPONENT_EVERY == 0) {
+				String tag = TAGS[(i / COMPONENT_EVERY) % TAGS.length];
+				// Both relative and full names, as projects use either
+				String name = i % 2 == 0 ? pkg.substring(ROOT_PACKAGE.length()) + "." + className
+						: pkg + "." + className;
+				manifest.append("        <" + tag + " android:name=\"" + name + "\"");
+				if (tag.equals("provider")) {
+					manifest.append(" android:authorities=\"" + ROOT_PACKAGE + ".provider" + i + "\"");
+				}
+				manifest.append(" />\n");
+			}
+			if (i % VIEW_EVERY == VIEW_EVERY - 1) {
+				FileUtils.writeStringToFile(new File(mainDir, "res/layout/layout_" + i + ".xml"),
+						writeLayout(i, pkg + "." + className), "UTF-8");
+			}
+			FileUtils.writeStringToFile(new File(javaDir, pkg.replace('.', '/') + "/" + className + ".java"),
+					writeClass(i, pkg, className, random), "UTF-8");
+		}
+
+		manifest.append("    </application>\n");
+		manifest.append("</manifest>\n");
+		FileUtils.writeStringToFile(new File(mainDir, "AndroidManifest.xml"), manifest.toString(), "UTF-8");
+		FileUtils.writeStringToFile(new File(mainDir, "res/values/strings.xml"),
+				"<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n"
+						+ "    <string name=\"app_name\">Synthetic</string>\n</resources>\n", "UTF-8");
+		FileUtils.writeStringToFile(new File(projectDir, "settings.gradle"), "include ':app'\n", "UTF-8");
+		FileUtils.writeStringToFile(new File(projectDir, "app/build.gradle"),
+				"android {\n    buildTypes {\n        release {\n            minifyEnabled false\n        }\n    }\n}\n",
+				"UTF-8");
+	}
+
+	// Packages fan out below the root, down to the given depth.
+	private String getPackage(int i) {
+		StringBuilder sb = new StringBuilder(ROOT_PACKAGE);
+		int levels = 1 + i % depth;
+		int rest = i;
+		for (int level = 0; level < levels; level++) {
+			sb.append('.').append(WORDS[(rest % FAN_OUT + level * FAN_OUT) % WORDS.length]);
+			rest /= FAN_OUT;
+		}
+		return sb.toString();
+	}
+
+	// Names are unique across packages, as they all end up in one.
+	private String getClassName(int i) {
+		String word = WORDS[i % WORDS.length];
+		String kind;
+		if (i % COMPONENT_EVERY == 0) {
+			kind = COMPONENTS[(i / COMPONENT_EVERY) % COMPONENTS.length];
+		} else if (i % VIEW_EVERY == VIEW_EVERY - 1) {
+			kind = "View";
+		} else {
+			kind = PLAIN[i % PLAIN.length];
+		}
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1) + i + kind;
+	}
+
+	private String writeLayout(int i, String viewClass) {
+		// The activity of the layout, for tools:context
+		int activity = (i / (COMPONENT_EVERY * COMPONENTS.length)) * COMPONENT_EVERY * COMPONENTS.length;
+		return "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+				+ "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n"
+				+ "    xmlns:tools=\"http://schemas.android.com/tools\"\n"
+				+ "    android:layout_width=\"match_parent\"\n" + "    android:layout_height=\"match_parent\"\n"
+				+ "    tools:context=\"" + getPackage(activity) + "." + getClassName(activity) + "\">\n\n"
+				+ "    <" + viewClass + "\n" + "        android:id=\"@+id/view_" + i + "\"\n"
+				+ "        android:layout_width=\"wrap_content\"\n"
+				+ "        android:layout_height=\"wrap_content\" />\n\n" + "</LinearLayout>\n";
+	}
+
+	private String writeClass(int i, String pkg, String className, Random random) {
+		// Refer to classes in other packages so the renames, the flattened
+		// packages and the dependencies of incremental runs have something
+		// to follow
+		int[] uses = { (i * 7 + 3) % classes, (i * 13 + 5) % classes };
+		int shape = i % TYPES.length;
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("package " + pkg + ";\n\n");
+		sb.append("import java.util.ArrayList;\n");
+		sb.append("import java.util.List;\n");
+		for (int used : uses) {
+			if (used != i && !getPackage(used).equals(pkg)) {
+				sb.append("import " + getPackage(used) + "." + getClassName(used) + ";\n");
+			}
+		}
+		sb.append("\npublic class " + className + " {\n\n");
+		sb.append("\tpublic static final String TAG = \"" + className + "\";\n");
+		sb.append("\tprivate final List<String> log = new ArrayList<String>();\n\n");
+
+		// Called by other classes, always with the same parameters
+		sb.append("\tpublic static int describe(int value, String label) {\n");
+		sb.append("\t\treturn value * " + (i + 1) + " + label.length();\n");
+		sb.append("\t}\n\n");
+
+		for (int m = 0; m < methods; m++) {
+			String word = WORDS[random.nextInt(WORDS.length)];
+			int used = uses[m % uses.length];
+			sb.append("\tpublic int " + word + m + "(int count, String label) {\n");
+			sb.append("\t\tint total = 0;\n");
+			sb.append("\t\tfor (int i = 0; i < count; i++) {\n");
+			sb.append("\t\t\ttotal += " + getClassName(used) + ".describe(i, label);\n");
+			sb.append("\t\t}\n");
+			sb.append("\t\tif (label.equals(\"" + word + " " + m + "\")) {\n");
+			sb.append("\t\t\tlog.add(TAG + \" " + word + "\");\n");
+			sb.append("\t\t} else if (total > " + random.nextInt(1000) + ") {\n");
+			sb.append("\t\t\tlog.add(classify(total));\n");
+			sb.append("\t\t}\n");
+			sb.append("\t\treturn total;\n");
+			sb.append("\t}\n\n");
+		}
+
+		writeWideMethods(sb, shape);
+		writeNestedCalls(sb, i);
+		writeChain(sb, random);
+		if (i % STRINGS_EVERY == 0) {
+			writeLiterals(sb, random);
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	// A method whose parameters are of mixed types, named after their shape
+	// so that every declaration of one name has the same carrier, and a
+	// method calling it.
+	private void writeWideMethods(StringBuilder sb, int shape) {
+		StringBuilder params = new StringBuilder();
+		StringBuilder args = new StringBuilder();
+		StringBuilder body = new StringBuilder();
+		for (int p = 0; p < parameters; p++) {
+			int type = (shape + p) % TYPES.length;
+			if (p > 0) {
+				params.append(", ");
+				args.append(", ");
+			}
+			params.append(TYPES[type]).append(" a").append(p);
+			args.append(ARGUMENTS[type]);
+			body.append("\t\ttotal += ").append(toLong(TYPES[type], "a" + p)).append(";\n");
+		}
+		sb.append("\tpublic long combine" + shape + "(" + params + ") {\n");
+		sb.append("\t\tlong total = 0;\n");
+		sb.append(body);
+		sb.append("\t\treturn total;\n");
+		sb.append("\t}\n\n");
+		sb.append("\tpublic long combineAll() {\n");
+		sb.append("\t\treturn combine" + shape + "(" + args + ");\n");
+		sb.append("\t}\n\n");
+	}
+
+	// A method of the class alone, called inside the arguments of its own
+	// calls and of others, which are rewritten from the inside out.
+	private void writeNestedCalls(StringBuilder sb, int i) {
+		sb.append("\tpublic int sum" + i + "(int a, int b) {\n");
+		sb.append("\t\treturn a + b;\n");
+		sb.append("\t}\n\n");
+		sb.append("\tpublic int sumAll() {\n");
+		sb.append("\t\tlog.add(String.valueOf(sum" + i + "(5, 6)));\n");
+		sb.append("\t\treturn sum" + i + "(sum" + i + "(1, 2), sum" + i + "(3, 4));\n");
+		sb.append("\t}\n\n");
+	}
+
+	private static String toLong(String type, String name) {
+		if (type.equals("String")) {
+			return name + ".length()";
+		} else if (type.equals("List<String>")) {
+			return name + ".size()";
+		} else if (type.equals("boolean")) {
+			return "(" + name + " ? 1 : 0)";
+		} else if (type.equals("double") || type.equals("float")) {
+			return "(long) " + name;
+		}
+		return name;
+	}
+
+	// Ifs nested inside each other, each with an else if and an else.
+	private void writeChain(StringBuilder sb, Random random) {
+		sb.append("\tpublic String classify(int value) {\n");
+		for (int d = 0; d < ifDepth; d++) {
+			String indent = indent(d + 2);
+			sb.append(indent + "if (value > " + random.nextInt(10000) + ") {\n");
+		}
+		sb.append(indent(ifDepth + 2) + "return \"deepest\";\n");
+		for (int d = ifDepth - 1; d >= 0; d--) {
+			String indent = indent(d + 2);
+			sb.append(indent + "} else if (value % " + (d + 2) + " == 0) {\n");
+			sb.append(indent + "\treturn \"level " + d + "\";\n");
+			sb.append(indent + "} else {\n");
+			sb.append(indent + "\tvalue += " + (d + 1) + ";\n");
+			sb.append(indent + "}\n");
+		}
+		sb.append("\t\treturn \"none\";\n");
+		sb.append("\t}\n\n");
+	}
+
+	private void writeLiterals(StringBuilder sb, Random random) {
+		sb.append("\tpublic List<String> messages() {\n");
+		sb.append("\t\tList<String> messages = new ArrayList<String>();\n");
+		for (int l = 0; l < LITERALS_PER_STRING_CLASS; l++) {
+			String literal = LITERALS[random.nextInt(LITERALS.length)];
+			String word = WORDS[random.nextInt(WORDS.length)];
+			sb.append("\t\tmessages.add(\"" + word + " " + l + " " + literal + "\");\n");
+		}
+		sb.append("\t\treturn messages;\n");
+		sb.append("\t}\n\n");
+	}
+
+	private static String indent(int depth) {
+		StringBuilder sb = new StringBuilder();
+		for (int d = 0; d < depth; d++) {
+			sb.append('\t');
+		}
+		return sb.toString();
+	}
+}
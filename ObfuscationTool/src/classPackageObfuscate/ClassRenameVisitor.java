@@ -0,0 +1,149 @@
+package classPackageObfuscate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.javaparser.ASTHelper;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.visitor.ModifierVisitorAdapter;
+
+/**
+ * Renames declarations and references of Android components to the names
+ * picked by ClassRenamer.readManifest. Working on the AST, it only renames
+ * whole names, never part of a longer one.
+ */
+public class ClassRenameVisitor extends ModifierVisitorAdapter<Object> {
+
+	// Fully declared component names to their obfuscated names.
+	private final Map<String, String> componentNames;
+
+	// Simple component names visible in the current file.
+	private final Map<String, String> simpleNames = new HashMap<String, String>();
+
+	private int renamedCount = 0;
+
+	public ClassRenameVisitor(Map<String, String> componentNames) {
+		this.componentNames = componentNames;
+	}
+
+	@Override
+	public Node visit(CompilationUnit n, Object arg) {
+		simpleNames.clear();
+
+		// Components in the same package and imported components can be
+		// referred to by their simple name.
+		String pkg = n.getPackage() == null ? "" : n.getPackage().getName().toString();
+		List<ImportDeclaration> imports = n.getImports();
+		for (Map.Entry<String, String> entry : componentNames.entrySet()) {
+			String component = entry.getKey();
+			String componentPkg = component.substring(0, component.lastIndexOf("."));
+			boolean visible = componentPkg.equals(pkg);
+			if (!visible && imports != null) {
+				for (ImportDeclaration imp : imports) {
+					String name = imp.getName().toString();
+					if (imp.isAsterisk() ? name.equals(componentPkg) : name.equals(component)) {
+						visible = true;
+						break;
+					}
+				}
+			}
+			if (visible) {
+				simpleNames.put(getSimpleName(component), getSimpleName(entry.getValue()));
+			}
+		}
+		return super.visit(n, arg);
+	}
+
+	@Override
+	public Node visit(ImportDeclaration n, Object arg) {
+		String renamed = componentNames.get(n.getName().toString());
+		if (renamed != null) {
+			n.setName(ASTHelper.createNameExpr(renamed));
+			renamedCount++;
+		}
+		return n;
+	}
+
+	@Override
+	public Node visit(ClassOrInterfaceDeclaration n, Object arg) {
+		if (simpleNames.containsKey(n.getName())) {
+			n.setName(simpleNames.get(n.getName()));
+			renamedCount++;
+		}
+		return super.visit(n, arg);
+	}
+
+	@Override
+	public Node visit(ConstructorDeclaration n, Object arg) {
+		if (simpleNames.containsKey(n.getName())) {
+			n.setName(simpleNames.get(n.getName()));
+			renamedCount++;
+		}
+		return super.visit(n, arg);
+	}
+
+	@Override
+	public Node visit(ClassOrInterfaceType n, Object arg) {
+		if (n.getScope() == null) {
+			if (simpleNames.containsKey(n.getName())) {
+				n.setName(simpleNames.get(n.getName()));
+				renamedCount++;
+			}
+		} else {
+			String renamed = componentNames.get(n.getScope().toString() + "." + n.getName());
+			if (renamed != null) {
+				n.setScope(createType(renamed.substring(0, renamed.lastIndexOf("."))));
+				n.setName(getSimpleName(renamed));
+				renamedCount++;
+			}
+		}
+		return super.visit(n, arg);
+	}
+
+	@Override
+	public Node visit(FieldAccessExpr n, Object arg) {
+		// Fully declared references, e.g. a.b.SomeActivity.CONSTANT
+		String renamed = componentNames.get(n.getScope().toString());
+		if (renamed != null) {
+			n.setScope(ASTHelper.createNameExpr(renamed));
+			renamedCount++;
+			return n;
+		}
+		return super.visit(n, arg);
+	}
+
+	@Override
+	public Node visit(NameExpr n, Object arg) {
+		// Static references by simple name, e.g. SomeActivity.CONSTANT
+		if (simpleNames.containsKey(n.getName())) {
+			n.setName(simpleNames.get(n.getName()));
+			renamedCount++;
+		}
+		return n;
+	}
+
+	/** Number of names changed so far */
+	public int getRenamedCount() {
+		return renamedCount;
+	}
+
+	private static ClassOrInterfaceType createType(String dottedName) {
+		ClassOrInterfaceType type = null;
+		for (String part : dottedName.split("\\.")) {
+			type = type == null ? new ClassOrInterfaceType(part) : new ClassOrInterfaceType(type, part);
+		}
+		return type;
+	}
+
+	private static String getSimpleName(String fullDeclaration) {
+		return fullDeclaration.substring(fullDeclaration.lastIndexOf(".") + 1);
+	}
+}
@@ -1,37 +1,22 @@
 package classPackageObfuscate;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-
-import org.apache.commons.io.FileUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * Class which renames classes which extend of Android components. These include
@@ -39,7 +24,7 @@ import org.xml.sax.SAXException;
  */
 public class ClassRenamer {
 	// Relative path to AndroidManifest file.
-	private static final String PATH_TO_MANIFEST = "\\app\\src\\main\\AndroidManifest.xml";
+	private static final String PATH_TO_MANIFEST = "/app/src/main/AndroidManifest.xml";
 
 	// Set with list of possible Android components
 	private static Set<String> androidComponents = new HashSet<String>();
@@ -53,216 +38,106 @@ public class ClassRenamer {
 	// Names of components found in the manifest.
 	static Map<String, String> componentNames;
 
+	// Obfuscated names of an earlier run, reused so unchanged files stay valid.
+	private static Map<String, String> previousComponentNames = new HashMap<String, String>();
+
 	/**
 	 * Renames Android component classes and their references to a random
 	 * String.
 	 * 
 	 * @param rootDir
 	 *            Path of the root directory of the project.
-	 * @throws TransformerException
 	 */
-	public static void renameClassesInXML(String rootDir) {
-		
-		// Add possible Android components to a hashset to be used to find
-		// elements in the XML.
-		addComponents();
-
-		File file = new File(rootDir);
-		try {
-			// Parse AndroidManifest.xml
-			Document xmlDoc = parseXMLfile(file.getAbsolutePath() + PATH_TO_MANIFEST);
-
-			// Get the top level package name.
-			packageName = getPackageName(xmlDoc);
-
-			// Get the Android components to be renamed.
-			componentNames = getComponentNames(xmlDoc, file.getAbsolutePath() + PATH_TO_MANIFEST);
-
-		} catch (ParserConfigurationException pce) {
-			pce.printStackTrace();
-		} catch (SAXException saxe) {
-			saxe.printStackTrace();
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
-		} catch (TransformerException e) {
-			e.printStackTrace();
-		}
-
+	public static void renameClassesInXML(String rootDir) throws IOException {
+		File manifest = new File(new File(rootDir).getAbsolutePath() + PATH_TO_MANIFEST);
+		SourceFiles.write(manifest, renameClassesInManifest(SourceFiles.read(manifest)));
 	}
 
 	/**
-	 * Replaces class names which are components with obfuscated names.
+	 * Same as renameClassesInXML, for a manifest which is already in memory.
 	 * 
-	 * @param file
-	 * @throws IOException
-	 * @throws SAXException
-	 * @throws ParserConfigurationException
-	 * @throws TransformerException
+	 * @param manifest
+	 *            Contents of AndroidManifest.xml.
+	 * @return the manifest with the components renamed
 	 */
-	public static void readFileAndReplace(File file) {
-		String absolutePath = file.getAbsolutePath();
-
-		// Check if the file is a component.
-		boolean isComponent = isComponent(absolutePath);
-
-		// For imports relevant to this file.
-		Map<String, String> imports = new HashMap<String, String>();
-		// Full class declaration of this file.
-		String fullDeclaration = getDeclaredNameFromAbsolutePath(absolutePath);
-		
-		String className = getClassNameFromPackage(fullDeclaration);
-		
-		String obfuscatedClassName = null;
-
-		// Add itself to imports if its a component.
-		if (isComponent) {
-			imports.put(className, getClassNameFromPackage(componentNames.get(fullDeclaration)));
-			obfuscatedClassName = getClassNameFromPackage(componentNames.get(fullDeclaration));
-		}
-
-		try {
-			// Read file as a string.
-			String fileString = FileUtils.readFileToString(file);
-
-			// Get imports part of file.
-			String importsInFile = fileString.substring(0, fileString.indexOf("{"));
-			for (String line : importsInFile.split("\n")) {
-				// Get imports that are components.
-				if (line.startsWith("import")) {
-					for (String component : componentNames.keySet()) {
-						if (line.contains(component)) {
-							imports.put(getClassNameFromPackage(component),
-									getClassNameFromPackage(componentNames.get(component)));
-						}
-					}
-				}
-			}
-
-			// Replace names in the file which are fully declared.
-			replaceFullyDeclaredNames(file);
-
-			// Replace the class name if the file is an Android component.
-			if (isComponent) {
-				replaceClassName(className, obfuscatedClassName, file);
-			}
-
-			// Replaces declared Android component imports.
-			if (!imports.isEmpty()) {
-				replaceImports(imports, file);
-			}
-			
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	public static String renameClassesInManifest(String manifest) throws IOException {
+		readManifest(manifest);
+		return new XmlRewriter(packageName, componentNames, null).rewrite(manifest);
 	}
 
 	/**
-	 * Replaces class names of the declared imports.
+	 * Reads the package and the components of a manifest and picks the
+	 * obfuscated names of the components, without changing it. An XmlRewriter
+	 * then renames them in the manifest and the resources together.
 	 * 
-	 * @param imports
-	 * @param file
-	 * @throws IOException
+	 * @param manifest
+	 *            Contents of AndroidManifest.xml.
 	 */
-	private static void replaceImports(Map<String, String> imports, File file) throws IOException {
-		FileReader fr = new FileReader(file);
-		BufferedReader br = new BufferedReader(fr);
+	public static void readManifest(String manifest) throws IOException {
+		List<String> declaredNames = new ArrayList<String>();
+		packageName = readManifest(manifest, declaredNames);
 
-		StringBuilder sb = new StringBuilder();
-		String line;
-		while ((line = br.readLine()) != null) {
-			for (String imp : imports.keySet()) {
-				if (line.contains(imp)) {
-					line = line.replace(imp, imports.get(imp));
-				}
-			}
-			sb.append(line + "\n");
-		}
-
-		FileWriter fw = new FileWriter(file, false); // true to append
-		try {
-			br.close();
-			fw.write(sb.toString());
-			fw.close();
-		} catch (Exception e) {
-			System.out.println(e.getMessage());
-		} finally {
-			fw.close();
-		}
+		// Get the Android components to be renamed.
+		componentNames = getComponentNames(declaredNames);
 	}
 
 	/**
-	 * Replaces the class's name to another string.
+	 * Reads the package of a manifest and the fully declared names of its
+	 * components, streaming it so nothing else of it is kept.
 	 * 
-	 * @param from
-	 *            The original class's name as a String.
-	 * @param to
-	 *            The name to rename the class to.
-	 * @param file
-	 *            The file to replace all references of this class for.
-	 * @throws IOException
+	 * @param componentNames
+	 *            List the names of the components are added to.
+	 * @return the package name
 	 */
-	private static void replaceClassName(String from, String to, File file) throws IOException {
-		FileReader fr = new FileReader(file);
-		BufferedReader br = new BufferedReader(fr);
-
-		StringBuilder sb = new StringBuilder();
-		String line;
-		while ((line = br.readLine()) != null) {
-			if (line.contains(from)) {
-				line = line.replace(from, to);
+	static String readManifest(String manifest, List<String> componentNames) throws IOException {
+		// Add possible Android components to a hashset to be used to find
+		// elements in the XML.
+		addComponents();
+		String pkg = "";
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		try {
+			XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(manifest));
+			try {
+				while (reader.hasNext()) {
+					if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+						continue;
+					}
+					if (reader.getLocalName().equals("manifest")) {
+						String value = reader.getAttributeValue(null, "package");
+						pkg = value != null ? value : "";
+					} else if (androidComponents.contains(reader.getLocalName())) {
+						// A name without a package cannot be told from a
+						// class of the default package, so it is not renamed
+						String name = reader.getAttributeValue(XmlRewriter.ANDROID_NAMESPACE, "name");
+						if (name != null && name.indexOf('.') >= 0) {
+							componentNames.add(name.startsWith(".") ? pkg + name : name);
+						}
+					}
+				}
+			} finally {
+				reader.close();
 			}
-			sb.append(line + "\n");
+		} catch (XMLStreamException e) {
+			throw new IOException("Cannot read the manifest: " + e.getMessage(), e);
 		}
+		return pkg;
+	}
 
-		FileWriter fw = new FileWriter(file, false); // true to append
-		try {
-			br.close();
-			fw.write(sb.toString());
-			fw.close();
-		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			fw.close();
-		}
+	/** Package of the manifest read, empty if none has been */
+	public static String getPackageName() {
+		return packageName;
 	}
 
 	/**
-	 * Replaces any references which have been fully declared (full package name
-	 * included) to its obfuscated name. These obfuscated names are stored in
-	 * componentNames.
-	 * 
-	 * @param file
-	 *            To replace references in.
-	 * @throws IOException
+	 * Forgets the manifest read by an earlier project, so that several
+	 * projects can be obfuscated in one run.
 	 */
-	private static void replaceFullyDeclaredNames(File file) throws IOException {
-		FileReader fr = new FileReader(file);
-		BufferedReader br = new BufferedReader(fr);
-
-		StringBuffer sb = new StringBuffer();
-		String line;
-		while ((line = br.readLine()) != null) {
-			for (String componentName : componentNames.keySet()) {
-				if (line.contains(componentName)) {
-					line = line.replace(componentName, componentNames.get(componentName));
-				}
-			}
-
-			// Can remove \n to make it less readable
-			sb.append(line + "\n");
-		}
-
-		FileWriter fw = new FileWriter(file, false); // true to append
-		try {
-			br.close();
-			fw.write(sb.toString());
-			fw.close();}
-			catch (Exception e) {
-				e.printStackTrace();
-			} finally {
-			fw.close();
-		}
-
+	public static void reset() {
+		packageName = "";
+		componentNames = null;
+		previousComponentNames = new HashMap<String, String>();
 	}
 
 	/**
@@ -312,92 +187,28 @@ public class ClassRenamer {
 	}
 
 	/**
-	 * Puts names of Android components as keys from an AndroidManifest.xml file
-	 * and generates a random value for the class name.
+	 * Generates a random class name for each Android component, reusing the
+	 * names of an earlier run.
 	 * 
-	 * @param xmlDoc
+	 * @param declaredNames
+	 *            Fully declared names of the components in the manifest.
 	 * @return Map of the Android components
-	 * @throws TransformerException
-	 * @throws FileNotFoundException
 	 */
-	private static Map<String, String> getComponentNames(Document xmlDoc, String pathToXml)
-			throws FileNotFoundException, TransformerException {
+	private static Map<String, String> getComponentNames(List<String> declaredNames) {
 		
 		Map<String, String> componentNames = new HashMap<String, String>();
 
-		// Get list of Android components
-		for (String componentName : androidComponents) {
-			// Get the component. Continue if it doesn't exist.
-			NodeList nl = xmlDoc.getElementsByTagName(componentName);
-			if (nl == null) {
-				continue;
-			}
-
-			// Get the declared name of the component.
-			for (int i = 0; i < nl.getLength(); i++) {
-				// Get the name attribute.
-				NamedNodeMap attributes = nl.item(i).getAttributes();
-				Node nameAttribute = attributes.getNamedItem("android:name");
-
-				// Get its value, extract its package, and make a random name
-				// for it.
-				String nameValue = nameAttribute.getNodeValue();
-				String pkg = nameValue.substring(0, nameValue.lastIndexOf("."));
-				String randomName = generateRandomName();
-
-				// Save the names to replace in componentNames and replace with
-				// obfuscated name.
-				if (nameValue.startsWith(".")) {
-					componentNames.put(packageName + nameValue, packageName + pkg + "." + randomName);
-				} else {
-					componentNames.put(nameValue, pkg + "." + randomName);
-				}
-				nameAttribute.setTextContent(pkg + "." + randomName);
-			}
+		for (String fullName : declaredNames) {
+			// Extract its package, and make a random name for it.
+			String pkg = fullName.substring(0, fullName.lastIndexOf("."));
+			String randomName = previousComponentNames.containsKey(fullName)
+					? getClassNameFromPackage(previousComponentNames.get(fullName)) : generateRandomName();
+			componentNames.put(fullName, pkg + "." + randomName);
 		}
 
-		Transformer tr = TransformerFactory.newInstance().newTransformer();
-		tr.setOutputProperty(OutputKeys.INDENT, "yes");
-		tr.setOutputProperty(OutputKeys.METHOD, "xml");
-		tr.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-		tr.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
-
-		// send DOM to file
-		tr.transform(new DOMSource(xmlDoc), new StreamResult(new FileOutputStream(pathToXml)));
-
 		return componentNames;
 	}
 
-	/**
-	 * Gets the package name declared in the Android Manifest xml.
-	 * 
-	 * @param xmlDoc
-	 *            The parsed XML file.
-	 * @return the package name
-	 */
-	private static String getPackageName(Document xmlDoc) {
-
-		return xmlDoc.getDocumentElement().getAttribute("package");
-	}
-
-	/**
-	 * Parses an XML file given a file path.
-	 * 
-	 * @param filePath
-	 *            Absolute path of the file.
-	 * @return Document An XML representation of the document.
-	 * @throws ParserConfigurationException
-	 * @throws SAXException
-	 * @throws IOException
-	 */
-	private static Document parseXMLfile(String filePath) throws ParserConfigurationException, SAXException, IOException {
-		DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-		Document doc = dBuilder.parse(filePath);
-		doc.getDocumentElement().normalize();
-		return doc;
-	}
-
 	/**
 	 * Generates a random string, to be used as a class name.
 	 * 
@@ -422,6 +233,46 @@ public class ClassRenamer {
 		androidComponents.add("receiver");
 	}
 	
+	/**
+	 * Sets the names picked by an earlier run. Components found in this map
+	 * keep their obfuscated name instead of getting a new random one.
+	 * 
+	 * @param names
+	 *            Map of fully declared names to obfuscated names.
+	 */
+	public static void setPreviousComponentNames(Map<String, String> names) {
+		previousComponentNames = new HashMap<String, String>(names);
+	}
+
+	/**
+	 * Gets the components found in the manifest, mapped to their obfuscated
+	 * names.
+	 * 
+	 * @return Map of fully declared names to obfuscated names, empty if the
+	 *         manifest has not been read.
+	 */
+	public static Map<String, String> getComponentNames() {
+		if (componentNames == null) {
+			return new HashMap<String, String>();
+		}
+		return componentNames;
+	}
+
+	/**
+	 * Gets the obfuscated class name of a component.
+	 * 
+	 * @param declaredName
+	 *            Full declaration of the class, separated by dots.
+	 * @return the obfuscated class name, or null if it is not a component.
+	 */
+	public static String getObfuscatedClassName(String declaredName) {
+		String obfuscatedName = getComponentNames().get(declaredName);
+		if (obfuscatedName == null) {
+			return null;
+		}
+		return getClassNameFromPackage(obfuscatedName);
+	}
+
 	/**
 	 * Renames a file to the obfuscated name if it's an android component.
 	 * @param f
@@ -0,0 +1,90 @@
+package classPackageObfuscate;
+
+import java.util.Set;
+
+import com.github.javaparser.ASTHelper;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.visitor.ModifierVisitorAdapter;
+
+/**
+ * Points the package declaration, imports and fully declared references of
+ * every project package at the single flattened package. Working on the AST,
+ * it only renames whole packages, never part of a longer name.
+ */
+public class PackageFlattenVisitor extends ModifierVisitorAdapter<Object> {
+
+	private final Set<String> packages;
+	private final String flatPackage;
+	private int renamedCount = 0;
+
+	/**
+	 * @param packages
+	 *            Every package of the project, including the root package.
+	 * @param flatPackage
+	 *            Package all classes are moved into.
+	 */
+	public PackageFlattenVisitor(Set<String> packages, String flatPackage) {
+		this.packages = packages;
+		this.flatPackage = flatPackage;
+	}
+
+	@Override
+	public Node visit(PackageDeclaration n, Object arg) {
+		n.setName(new NameExpr(flatPackage));
+		renamedCount++;
+		return n;
+	}
+
+	@Override
+	public Node visit(ImportDeclaration n, Object arg) {
+		String name = n.getName().toString();
+		String pkg = n.isAsterisk() ? name : findPackagePrefix(name);
+		if (pkg != null && packages.contains(pkg)) {
+			n.setName(ASTHelper.createNameExpr(flatPackage + name.substring(pkg.length())));
+			renamedCount++;
+		}
+		return n;
+	}
+
+	@Override
+	public Node visit(ClassOrInterfaceType n, Object arg) {
+		if (n.getScope() != null && packages.contains(n.getScope().toString())) {
+			n.setScope(new ClassOrInterfaceType(flatPackage));
+			renamedCount++;
+			return n;
+		}
+		return super.visit(n, arg);
+	}
+
+	@Override
+	public Node visit(FieldAccessExpr n, Object arg) {
+		if (packages.contains(n.getScope().toString())) {
+			n.setScope(new NameExpr(flatPackage));
+			renamedCount++;
+			return n;
+		}
+		return super.visit(n, arg);
+	}
+
+	/** Number of package names changed so far */
+	public int getRenamedCount() {
+		return renamedCount;
+	}
+
+	// Longest project package that the fully declared name starts with.
+	private String findPackagePrefix(String name) {
+		String prefix = name;
+		while (prefix.lastIndexOf(".") != -1) {
+			prefix = prefix.substring(0, prefix.lastIndexOf("."));
+			if (packages.contains(prefix)) {
+				return prefix;
+			}
+		}
+		return null;
+	}
+}
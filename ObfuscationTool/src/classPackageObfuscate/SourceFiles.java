@@ -0,0 +1,196 @@
+package classPackageObfuscate;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * File reading and writing shared by every pass. Files are always UTF-8,
+ * whatever the platform charset is.
+ *
+ * A file is written into a temporary file next to it which is then moved over
+ * it, so a pass which fails or is killed half way leaves either the old or the
+ * new contents, never part of a file. The byte buffers are kept by each
+ * thread and reused for the next file.
+ */
+public final class SourceFiles {
+
+	private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+	// Larger buffers are not kept, so one huge file does not pin its buffer
+	private static final int MAX_POOLED_BUFFER_SIZE = 8 * 1024 * 1024;
+
+	private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>();
+
+	private static final ThreadLocal<CharsetEncoder> ENCODERS = new ThreadLocal<CharsetEncoder>() {
+		@Override
+		protected CharsetEncoder initialValue() {
+			return StandardCharsets.UTF_8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+	};
+
+	// Keeps the names of temporary files written at the same time apart
+	private static final AtomicLong TEMP_FILE_COUNTER = new AtomicLong();
+
+	private SourceFiles() {
+	}
+
+	/** Reads a whole file as UTF-8 */
+	public static String read(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE - 1) {
+				throw new IOException("File is too large: " + file);
+			}
+			// One byte more than the size, so a file which grew since is
+			// noticed and read to the end
+			ByteBuffer buffer = getBuffer((int) size + 1);
+			while (channel.read(buffer) != -1) {
+				if (!buffer.hasRemaining()) {
+					buffer = grow(buffer);
+				}
+			}
+			return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/** Replaces a file with the text encoded as UTF-8 */
+	public static void write(File file, String text) throws IOException {
+		CharsetEncoder encoder = ENCODERS.get();
+		encoder.reset();
+		CharBuffer chars = CharBuffer.wrap(text);
+		ByteBuffer buffer = getBuffer(text.length() + text.length() / 8 + 16);
+
+		CoderResult result;
+		while ((result = encoder.encode(chars, buffer, true)).isOverflow()) {
+			buffer = grow(buffer);
+		}
+		while ((result = encoder.flush(buffer)).isOverflow()) {
+			buffer = grow(buffer);
+		}
+		if (result.isError()) {
+			result.throwException();
+		}
+
+		buffer.flip();
+		writeAtomically(file, buffer);
+	}
+
+	/** Replaces a file with the given bytes */
+	public static void write(File file, byte[] bytes) throws IOException {
+		writeAtomically(file, ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * A new temporary file next to a file, for writing its next contents into
+	 * before they are moved over it with moveOver. Its folder is made if
+	 * needed.
+	 */
+	public static File createTempFile(File file) throws IOException {
+		Path target = file.toPath().toAbsolutePath();
+		Path directory = target.getParent();
+		Files.createDirectories(directory);
+		return directory.resolve("." + target.getFileName() + "." + TEMP_FILE_COUNTER.incrementAndGet() + ".tmp")
+				.toFile();
+	}
+
+	/** Replaces a file with a temporary file made by createTempFile */
+	public static void moveOver(File temp, File file) throws IOException {
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/** Whether two files exist and hold the same bytes */
+	public static boolean hasSameContents(File a, File b) throws IOException {
+		if (!a.isFile() || !b.isFile() || a.length() != b.length()) {
+			return false;
+		}
+		InputStream inA = new BufferedInputStream(new FileInputStream(a));
+		try {
+			InputStream inB = new BufferedInputStream(new FileInputStream(b));
+			try {
+				int c;
+				while ((c = inA.read()) != -1) {
+					if (c != inB.read()) {
+						return false;
+					}
+				}
+				return inB.read() == -1;
+			} finally {
+				inB.close();
+			}
+		} finally {
+			inA.close();
+		}
+	}
+
+	private static void writeAtomically(File file, ByteBuffer data) throws IOException {
+		File temp = createTempFile(file);
+		boolean moved = false;
+		try {
+			FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE,
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				while (data.hasRemaining()) {
+					channel.write(data);
+				}
+			} finally {
+				channel.close();
+			}
+
+			moveOver(temp, file);
+			moved = true;
+		} finally {
+			if (!moved) {
+				Files.deleteIfExists(temp.toPath());
+			}
+		}
+	}
+
+	// Empty buffer of this thread with room for at least the given bytes.
+	private static ByteBuffer getBuffer(int capacity) {
+		ByteBuffer buffer = BUFFERS.get();
+		if (buffer == null || buffer.capacity() < capacity) {
+			buffer = ByteBuffer.allocate(Math.max(capacity, INITIAL_BUFFER_SIZE));
+			if (buffer.capacity() <= MAX_POOLED_BUFFER_SIZE) {
+				BUFFERS.set(buffer);
+			}
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	// Buffer of twice the size holding what has been put in the full one.
+	private static ByteBuffer grow(ByteBuffer buffer) {
+		ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+		buffer.flip();
+		bigger.put(buffer);
+		if (bigger.capacity() <= MAX_POOLED_BUFFER_SIZE) {
+			BUFFERS.set(bigger);
+		}
+		return bigger;
+	}
+}
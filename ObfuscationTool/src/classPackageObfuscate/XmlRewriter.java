@@ -0,0 +1,395 @@
+package classPackageObfuscate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Renames the classes which Android XML files refer to, the manifest as well
+ * as layouts, menus and the other files under res/. A file is streamed
+ * through a StAX reader and written out as it is read, so only the element
+ * being read is held in memory however big the file is.
+ *
+ * Element names, as used by custom views, and attribute values which are the
+ * name of a project class are renamed. Names starting with a dot are relative
+ * to the package of the manifest, and stay relative if the class is still in
+ * it. The package attribute of the manifest becomes the new root package.
+ * Text, comments and anything which is not a class name are left as they are.
+ *
+ * A rewriter does not change once made, so one can be shared by every thread
+ * rewriting the files of a project.
+ */
+public class XmlRewriter {
+
+	public static final String ANDROID_NAMESPACE = "http://schemas.android.com/apk/res/android";
+
+	// Indent of attributes put on lines of their own, as Android Studio does
+	private static final String ATTRIBUTE_INDENT = "    ";
+
+	private static final ThreadLocal<XMLInputFactory> FACTORIES = new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			// Android XML has no DTDs, and external entities are not followed
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+			return factory;
+		}
+	};
+
+	private final String rootPackage;
+	private final String newRootPackage;
+	private final Map<String, String> classNames;
+	private final AtomicLong renamedCount = new AtomicLong();
+
+	/**
+	 * @param rootPackage
+	 *            Package of the manifest, which relative names are in.
+	 * @param classNames
+	 *            Fully declared names of the classes to rename, e.g. a.b.C, to
+	 *            their new fully declared names.
+	 * @param newRootPackage
+	 *            Package the manifest declares afterwards, or null to keep it.
+	 */
+	public XmlRewriter(String rootPackage, Map<String, String> classNames, String newRootPackage) {
+		this.rootPackage = rootPackage;
+		this.classNames = new HashMap<String, String>(classNames);
+		this.newRootPackage = newRootPackage != null ? newRootPackage : rootPackage;
+	}
+
+	/**
+	 * Names for moving every class into one flat package, as PackageFlattener
+	 * does, after ClassRenamer has picked the names of the components.
+	 *
+	 * @param classes
+	 *            Fully declared names of the classes of the project.
+	 * @param components
+	 *            Fully declared names of components to their obfuscated names.
+	 */
+	public static Map<String, String> flatten(Collection<String> classes, Map<String, String> components,
+			String flatPackage) {
+		Map<String, String> names = new HashMap<String, String>();
+		for (String className : classes) {
+			names.put(className, flatPackage + "." + getSimpleName(className));
+		}
+		for (Map.Entry<String, String> entry : components.entrySet()) {
+			names.put(entry.getKey(), flatPackage + "." + getSimpleName(entry.getValue()));
+		}
+		return names;
+	}
+
+	/** Same as flatten, for a project without components to rename */
+	public static Map<String, String> flatten(Collection<String> classes, String flatPackage) {
+		return flatten(classes, Collections.<String, String> emptyMap(), flatPackage);
+	}
+
+	/** Number of names renamed so far, over every file */
+	public long getRenamedCount() {
+		return renamedCount.get();
+	}
+
+	/** Rewrites a file which is already in memory */
+	public String rewrite(String xml) throws IOException {
+		StringWriter out = new StringWriter(xml.length() + 64);
+		boolean changed;
+		try {
+			changed = rewrite(FACTORIES.get().createXMLStreamReader(new StringReader(xml)), out);
+		} catch (XMLStreamException e) {
+			throw new IOException("Cannot read XML: " + e.getMessage(), e);
+		}
+		// Files without class names keep their formatting
+		return changed ? out.toString() : xml;
+	}
+
+	/**
+	 * Rewrites a file into another, which may be the same file. The output is
+	 * only written if its contents change, so incremental builds do not see
+	 * it as changed: a file without class names is copied as it is, and an
+	 * output which is already up to date is left alone.
+	 *
+	 * @return whether the output was written
+	 */
+	public boolean rewrite(File from, File to) throws IOException {
+		File temp = SourceFiles.createTempFile(to);
+		try {
+			boolean changed;
+			InputStream in = new BufferedInputStream(new FileInputStream(from));
+			try {
+				Writer out = new BufferedWriter(
+						new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+				try {
+					changed = rewrite(FACTORIES.get().createXMLStreamReader(in), out);
+				} finally {
+					out.close();
+				}
+			} catch (XMLStreamException e) {
+				throw new IOException("Cannot read " + from + ": " + e.getMessage(), e);
+			} finally {
+				in.close();
+			}
+
+			File contents = changed ? temp : from;
+			if (SourceFiles.hasSameContents(contents, to)) {
+				return false;
+			}
+			if (!changed) {
+				Files.copy(from.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			SourceFiles.moveOver(temp, to);
+			return true;
+		} finally {
+			Files.deleteIfExists(temp.toPath());
+		}
+	}
+
+	/**
+	 * The new name of a class name as written in an XML file, or null if it
+	 * is not the name of a class to rename.
+	 */
+	public String rename(String name) {
+		boolean relative = name.startsWith(".");
+		if (name.isEmpty() || (relative && rootPackage.isEmpty())) {
+			return null;
+		}
+		String full = relative ? rootPackage + name : name;
+
+		// Nested classes are written Outer$Inner
+		String nested = "";
+		int dollar = full.indexOf('$');
+		if (dollar >= 0) {
+			nested = full.substring(dollar);
+			full = full.substring(0, dollar);
+		}
+
+		String renamed = classNames.get(full);
+		if (renamed == null) {
+			return null;
+		}
+		renamed += nested;
+		if (relative && renamed.startsWith(newRootPackage + ".")) {
+			return renamed.substring(newRootPackage.length());
+		}
+		return renamed;
+	}
+
+	// Copies the document read to out with the names renamed, returning
+	// whether any were.
+	private boolean rewrite(XMLStreamReader reader, Writer out) throws XMLStreamException, IOException {
+		boolean changed = false;
+		boolean rootElement = true;
+		// A start tag is only closed once it is known whether it has content
+		boolean tagOpen = false;
+		// Whitespace the element being written is indented by
+		String indent = "";
+		try {
+			writeDeclaration(reader, out);
+			while (reader.hasNext()) {
+				int event = reader.next();
+				if (tagOpen && event != XMLStreamConstants.END_ELEMENT) {
+					out.write('>');
+					tagOpen = false;
+				}
+				switch (event) {
+				case XMLStreamConstants.START_ELEMENT:
+					changed |= writeStartTag(reader, out, rootElement, indent);
+					rootElement = false;
+					tagOpen = true;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					if (tagOpen) {
+						out.write("/>");
+						tagOpen = false;
+					} else {
+						out.write("</");
+						out.write(renameElement(reader.getPrefix(), reader.getLocalName()));
+						out.write('>');
+					}
+					break;
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.SPACE:
+					String text = reader.getText();
+					int lineBreak = text.lastIndexOf('\n');
+					if (lineBreak >= 0 && text.substring(lineBreak + 1).trim().isEmpty()) {
+						indent = text.substring(lineBreak + 1);
+					}
+					escape(text, false, out);
+					break;
+				case XMLStreamConstants.CDATA:
+					out.write("<![CDATA[");
+					out.write(reader.getText());
+					out.write("]]>");
+					break;
+				case XMLStreamConstants.COMMENT:
+					out.write("<!--");
+					out.write(reader.getText());
+					out.write("-->");
+					if (rootElement) {
+						out.write('\n');
+					}
+					break;
+				case XMLStreamConstants.PROCESSING_INSTRUCTION:
+					out.write("<?");
+					out.write(reader.getPITarget());
+					if (reader.getPIData() != null && !reader.getPIData().isEmpty()) {
+						out.write(' ');
+						out.write(reader.getPIData());
+					}
+					out.write("?>");
+					break;
+				case XMLStreamConstants.ENTITY_REFERENCE:
+					out.write('&');
+					out.write(reader.getLocalName());
+					out.write(';');
+					break;
+				case XMLStreamConstants.END_DOCUMENT:
+					// Whitespace after the root element is not reported
+					out.write('\n');
+					break;
+				default:
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return changed;
+	}
+
+	// Writes the start of a tag up to its closing bracket, returning whether
+	// any name in it was renamed.
+	private boolean writeStartTag(XMLStreamReader reader, Writer out, boolean rootElement, String indent)
+			throws XMLStreamException, IOException {
+		boolean changed = false;
+
+		String name = renameElement(reader.getPrefix(), reader.getLocalName());
+		if (!name.equals(qualify(reader.getPrefix(), reader.getLocalName()))) {
+			changed = true;
+			renamedCount.incrementAndGet();
+		}
+		out.write('<');
+		out.write(name);
+
+		// More than one attribute goes one to a line
+		int count = reader.getNamespaceCount() + reader.getAttributeCount();
+		String separator = count > 1 ? "\n" + indent + ATTRIBUTE_INDENT : " ";
+		boolean first = true;
+		for (int i = 0; i < reader.getNamespaceCount(); i++) {
+			String prefix = reader.getNamespacePrefix(i);
+			out.write(first ? " " : separator);
+			out.write(prefix == null || prefix.isEmpty() ? "xmlns" : "xmlns:" + prefix);
+			writeValue(reader.getNamespaceURI(i), out);
+			first = false;
+		}
+		for (int i = 0; i < reader.getAttributeCount(); i++) {
+			String attribute = qualify(reader.getAttributePrefix(i), reader.getAttributeLocalName(i));
+			String value = reader.getAttributeValue(i);
+			String renamed;
+			if (rootElement && attribute.equals("package") && reader.getLocalName().equals("manifest")) {
+				renamed = value.equals(rootPackage) ? newRootPackage : null;
+			} else {
+				renamed = rename(value);
+			}
+			if (renamed != null && !renamed.equals(value)) {
+				value = renamed;
+				changed = true;
+				renamedCount.incrementAndGet();
+			}
+			out.write(first ? " " : separator);
+			out.write(attribute);
+			writeValue(value, out);
+			first = false;
+		}
+		return changed;
+	}
+
+	// Custom views are elements named after their class.
+	private String renameElement(String prefix, String localName) {
+		String renamed = localName.indexOf('.') > 0 ? rename(localName) : null;
+		return qualify(prefix, renamed != null ? renamed : localName);
+	}
+
+	private static void writeDeclaration(XMLStreamReader reader, Writer out) throws IOException {
+		if (reader.getVersion() == null) {
+			return;
+		}
+		out.write("<?xml version=\"" + reader.getVersion() + "\"");
+		if (reader.getCharacterEncodingScheme() != null) {
+			// The output is always UTF-8
+			String encoding = reader.getCharacterEncodingScheme();
+			out.write(" encoding=\"" + (encoding.equalsIgnoreCase("UTF-8") ? encoding : "utf-8") + "\"");
+		}
+		if (reader.standaloneSet()) {
+			out.write(" standalone=\"" + (reader.isStandalone() ? "yes" : "no") + "\"");
+		}
+		out.write("?>\n");
+	}
+
+	private static String qualify(String prefix, String localName) {
+		return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+	}
+
+	private static void writeValue(String value, Writer out) throws IOException {
+		out.write("=\"");
+		escape(value, true, out);
+		out.write('"');
+	}
+
+	// Escapes text, and in attribute values also the whitespace which would
+	// otherwise become a space when read again.
+	private static void escape(String text, boolean attribute, Writer out) throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '&':
+				out.write("&amp;");
+				break;
+			case '<':
+				out.write("&lt;");
+				break;
+			case '>':
+				out.write("&gt;");
+				break;
+			case '"':
+				out.write(attribute ? "&quot;" : "\"");
+				break;
+			case '\n':
+				out.write(attribute ? "&#10;" : "\n");
+				break;
+			case '\r':
+				out.write(attribute ? "&#13;" : "\r");
+				break;
+			case '\t':
+				out.write(attribute ? "&#9;" : "\t");
+				break;
+			default:
+				out.write(c);
+			}
+		}
+	}
+
+	private static String getSimpleName(String className) {
+		return className.substring(className.lastIndexOf('.') + 1);
+	}
+}
@@ -0,0 +1,128 @@
+package encryptorPackage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Thin client of ObfuscationDaemon. It takes the same arguments as
+ * ObfuscatorCLI, sends them to the daemon and prints the progress lines as
+ * they come back, exiting with the exit code of the job. Where no daemon is
+ * running the job is run in this JVM instead.
+ *
+ * <pre>
+ * java encryptorPackage.DaemonClient [--info &lt;file&gt;] [ObfuscatorCLI arguments]
+ * java encryptorPackage.DaemonClient [--info &lt;file&gt;] --status|--stop
+ * </pre>
+ *
+ * Arguments, and the working folder, containing a tab or a line break
+ * cannot be sent and are rejected with a usage error.
+ */
+public class DaemonClient {
+
+	private static final String ENCODING = "UTF-8";
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	/** @return the exit code */
+	public static int run(String[] args) {
+		File infoFile = ObfuscationDaemon.getDefaultInfoFile();
+		String command = null;
+		List<String> cliArgs = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--info") && i + 1 < args.length) {
+				infoFile = new File(args[++i]);
+			} else if (args[i].equals("--status")) {
+				command = "STATUS";
+			} else if (args[i].equals("--stop")) {
+				command = "STOP";
+			} else {
+				cliArgs.add(args[i]);
+			}
+		}
+
+		if (command == null) {
+			List<String> fields = new ArrayList<String>();
+			fields.add(new File("").getAbsolutePath());
+			fields.addAll(cliArgs);
+			StringBuilder sb = new StringBuilder("RUN");
+			for (String field : fields) {
+				// The fields are sent tab separated on one line, so these
+				// would split the command or cut it short
+				if (field.indexOf('\t') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+					System.err.println("Cannot send a tab or line break to the daemon: " + field);
+					return ObfuscatorCLI.EXIT_USAGE;
+				}
+				sb.append('\t').append(field);
+			}
+			command = sb.toString();
+		}
+
+		String[] info = readInfoFile(infoFile);
+		if (info != null) {
+			try {
+				return send(Integer.parseInt(info[0]), info[1], command);
+			} catch (ConnectException e) {
+				// Left behind by a daemon which was killed
+			} catch (IOException e) {
+				System.err.println("Cannot reach the daemon: " + e);
+				return ObfuscatorCLI.EXIT_FAILED;
+			}
+		}
+
+		if (!command.startsWith("RUN")) {
+			System.err.println("No daemon running (" + infoFile.getAbsolutePath() + ")");
+			return ObfuscatorCLI.EXIT_FAILED;
+		}
+		System.err.println("No daemon running, obfuscating in this JVM");
+		return ObfuscatorCLI.run(cliArgs.toArray(new String[cliArgs.size()]));
+	}
+
+	// Sends a command and prints what comes back, returning the exit code.
+	private static int send(int port, String token, String command) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), ENCODING));
+			out.print(token + "\n" + command + "\n");
+			out.flush();
+
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), ENCODING));
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith("EXIT\t")) {
+					return Integer.parseInt(line.substring("EXIT\t".length()));
+				}
+				System.out.println(line);
+				System.out.flush();
+				if (line.equals("DENIED") || line.startsWith("UNKNOWN")) {
+					return ObfuscatorCLI.EXIT_FAILED;
+				}
+			}
+			return command.startsWith("RUN") ? ObfuscatorCLI.EXIT_FAILED : ObfuscatorCLI.EXIT_OK;
+		} finally {
+			socket.close();
+		}
+	}
+
+	// The port and token of the daemon, or null if none is running.
+	private static String[] readInfoFile(File infoFile) {
+		try {
+			String[] info = FileUtils.readFileToString(infoFile, ENCODING).trim().split("\t");
+			return info.length == 2 ? info : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+}
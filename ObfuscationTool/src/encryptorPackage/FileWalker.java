@@ -1,38 +1,56 @@
 package encryptorPackage;
 
 import java.io.File;
-
-import classPackageObfuscate.ClassRenamer;
-import classPackageObfuscate.PackageFlattener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 
 public class FileWalker {
 
 	private String startingPath;
-	private String packageTracker = "";
+	private List<File> javaFiles;
+	private Set<String> packages;
 
 	// Constructor which assigns the starting path.
 	public FileWalker(String sPath) {
 		startingPath = sPath;
 	}
 
+	// Finds every .java file outside the xyz package and records its package
+	// for the package flattener.
+	public List<File> walk() {
+		javaFiles = new ArrayList<File>();
+		packages = new TreeSet<String>();
+		walk(new File(startingPath), "");
+		return javaFiles;
+	}
+
+	// Packages of the files found by the last walk.
+	public Set<String> getPackages() {
+		return packages;
+	}
+
 	// Recursively iterates through all files in the directory
-	public void walk(String path, String keyString) {
+	private void walk(File root, String packageTracker) {
 
-		File root = new File(path);
 		File[] list = root.listFiles();
 
 		// If no files in directory, return
 		if (list == null)
 			return;
 
+		// Keep the order the same on every OS so runs are repeatable
+		Arrays.sort(list);
+
 		// Loop through all files in the directory
 		for (File f : list) {
 
 			if (f.isDirectory() && !f.getName().equals("xyz")) {
 
 				// Append directory onto the packageTracker
-				packageTracker = packageTracker + f.getName() + ".";
-				walk(f.getAbsolutePath(), keyString);
+				walk(f, packageTracker + f.getName() + ".");
 
 			} else {
 
@@ -40,38 +58,15 @@ public class FileWalker {
 				String extension = f.toString().substring(f.toString().lastIndexOf(".") + 1, f.toString().length());
 				if (extension.equals("java")) {
 
-					// Debug printing
-					// System.out.println("JAVA CLASS FOUND:" +
-					// f.getAbsoluteFile());
+					// Store the package for the package flattener
+					if (!packageTracker.isEmpty()) {
+						String pkg = packageTracker.substring(0, packageTracker.length() - 1);
+						packages.add(pkg);
+					}
 
-					// Store the package in a HashMap for later use
-					PackageFlattener.packageList.put(packageTracker.substring(0, packageTracker.length() - 1), 1);
-
-					// Encrypt strings
-					StringReplacer.Replace(f, keyString);
-
-					// Swap if-else statements with try-catch
-					TryCatchReplacer.Replace(f);
-
-					// Rename Android components.
-					ClassRenamer.readFileAndReplace(f);
-
-					// Rename .java file if it's an Android component.
-					File newFile = ClassRenamer.renameFile(f);
-					
-					// Move packages to one location
-					PackageFlattener.MoveJavaFile(startingPath, newFile);
-					
+					javaFiles.add(f);
 				}
 			}
 		}
-		// Maintaining the package reference
-		try {
-			packageTracker = packageTracker.substring(0, packageTracker.length() - 1);
-			packageTracker = packageTracker.substring(0, packageTracker.lastIndexOf("."));
-			packageTracker = packageTracker + ".";
-		} catch (Exception e) {
-			// Ignore out of bounds exceptions
-		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,255 @@
+package encryptorPackage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import classPackageObfuscate.SourceFiles;
+
+/**
+ * Manifest kept next to the obfuscated output so that a later run only has to
+ * redo the files which changed. It records the pass configuration, the key
+ * fragments, the component renames and a fingerprint and output name for
+ * every source file.
+ */
+public class ObfuscationCache {
+
+	public static final String FILE_NAME = ".obfuscation-cache";
+
+	// Prefixes of the keys in the manifest
+	private static final String CONFIGURATION = "config";
+	private static final String FRAGMENT = "fragment.";
+	private static final String RENAME = "rename.";
+	private static final String FINGERPRINT = "file.";
+	private static final String OUTPUT = "output.";
+	private static final String DECLARED = "declared.";
+	private static final String CALLED = "called.";
+	private static final String SIGNATURES = "signatures.";
+	private static final String METHODS_HASH = "methods.";
+
+	private final File file;
+	private final Properties properties = new Properties();
+
+	private ObfuscationCache(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Loads the manifest of an output project, or an empty one if there was no
+	 * earlier run.
+	 *
+	 * @param outputDirectory
+	 *            Root of the obfuscated project.
+	 */
+	public static ObfuscationCache load(File outputDirectory) throws IOException {
+		ObfuscationCache cache = new ObfuscationCache(new File(outputDirectory, FILE_NAME));
+		if (cache.file.exists()) {
+			InputStream in = new FileInputStream(cache.file);
+			try {
+				cache.properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return cache;
+	}
+
+	public void save() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		properties.store(out, "Obfuscation cache, delete to force a full run");
+		SourceFiles.write(file, out.toByteArray());
+	}
+
+	/**
+	 * Checks the pass configuration against the one of the earlier run. If it
+	 * differs, every file fingerprint is dropped so all files are redone.
+	 * Renames and key fragments are kept.
+	 */
+	public void checkConfiguration(String configuration) {
+		if (!configuration.equals(properties.getProperty(CONFIGURATION))) {
+			for (String key : properties.stringPropertyNames()) {
+				if (key.startsWith(FINGERPRINT) || key.startsWith(DECLARED) || key.startsWith(CALLED)
+						|| key.startsWith(SIGNATURES) || key.startsWith(METHODS_HASH)) {
+					properties.remove(key);
+				}
+			}
+			properties.setProperty(CONFIGURATION, configuration);
+		}
+	}
+
+	public Map<String, String> getKeyFragments() {
+		return getMap(FRAGMENT);
+	}
+
+	public void setKeyFragments(Map<String, String> fragments) {
+		setMap(FRAGMENT, fragments);
+	}
+
+	public Map<String, String> getComponentNames() {
+		return getMap(RENAME);
+	}
+
+	public void setComponentNames(Map<String, String> componentNames) {
+		setMap(RENAME, componentNames);
+	}
+
+	/** Relative paths of all source files of the earlier run */
+	public Set<String> getSourceFiles() {
+		return getMap(OUTPUT).keySet();
+	}
+
+	public String getFingerprint(String relativePath) {
+		return properties.getProperty(FINGERPRINT + relativePath);
+	}
+
+	/** Name of the output file written for a source file */
+	public String getOutput(String relativePath) {
+		return properties.getProperty(OUTPUT + relativePath);
+	}
+
+	public void setFile(String relativePath, String fingerprint, String output) {
+		properties.setProperty(FINGERPRINT + relativePath, fingerprint);
+		properties.setProperty(OUTPUT + relativePath, output);
+	}
+
+	/** Forgets a source file which no longer exists */
+	public void removeFile(String relativePath) {
+		properties.remove(FINGERPRINT + relativePath);
+		properties.remove(OUTPUT + relativePath);
+		properties.remove(DECLARED + relativePath);
+		properties.remove(CALLED + relativePath);
+		properties.remove(SIGNATURES + relativePath);
+		properties.remove(METHODS_HASH + relativePath);
+	}
+
+	/**
+	 * Method names declared in a file, or null if not known for this version
+	 * of the file.
+	 */
+	public Set<String> getDeclaredMethods(String relativePath, String contentHash) {
+		if (!contentHash.equals(properties.getProperty(METHODS_HASH + relativePath))) {
+			return null;
+		}
+		return getSet(DECLARED + relativePath);
+	}
+
+	/**
+	 * Method names called in a file, or null if not known for this version of
+	 * the file.
+	 */
+	public Set<String> getCalledMethods(String relativePath, String contentHash) {
+		if (!contentHash.equals(properties.getProperty(METHODS_HASH + relativePath))) {
+			return null;
+		}
+		return getSet(CALLED + relativePath);
+	}
+
+	/**
+	 * Signatures of the methods declared in a file, or null if not known for
+	 * this version of the file.
+	 */
+	public List<String> getMethodSignatures(String relativePath, String contentHash) {
+		if (!contentHash.equals(properties.getProperty(METHODS_HASH + relativePath))) {
+			return null;
+		}
+		return getList(SIGNATURES + relativePath);
+	}
+
+	public void setMethods(String relativePath, String contentHash, Set<String> declared, Set<String> called) {
+		properties.setProperty(METHODS_HASH + relativePath, contentHash);
+		properties.setProperty(DECLARED + relativePath, join(declared));
+		properties.setProperty(CALLED + relativePath, join(called));
+	}
+
+	public void setMethods(String relativePath, String contentHash, Set<String> declared, Set<String> called,
+			List<String> signatures) {
+		setMethods(relativePath, contentHash, declared, called);
+		properties.setProperty(SIGNATURES + relativePath, join(signatures));
+	}
+
+	/** SHA-256 of the given parts as a hex string */
+	public static String hash(String... parts) {
+		try {
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			for (String part : parts) {
+				sha.update(part.getBytes("UTF-8"));
+				sha.update((byte) 0);
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : sha.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private Map<String, String> getMap(String prefix) {
+		Map<String, String> map = new HashMap<String, String>();
+		for (String key : properties.stringPropertyNames()) {
+			if (key.startsWith(prefix)) {
+				map.put(key.substring(prefix.length()), properties.getProperty(key));
+			}
+		}
+		return map;
+	}
+
+	private void setMap(String prefix, Map<String, String> map) {
+		for (String key : properties.stringPropertyNames()) {
+			if (key.startsWith(prefix)) {
+				properties.remove(key);
+			}
+		}
+		for (Map.Entry<String, String> entry : map.entrySet()) {
+			properties.setProperty(prefix + entry.getKey(), entry.getValue());
+		}
+	}
+
+	private Set<String> getSet(String key) {
+		List<String> list = getList(key);
+		return list != null ? new HashSet<String>(list) : null;
+	}
+
+	private List<String> getList(String key) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			return null;
+		}
+		List<String> list = new ArrayList<String>();
+		if (!value.isEmpty()) {
+			list.addAll(Arrays.asList(value.split(",")));
+		}
+		return list;
+	}
+
+	// Sorted, so the manifest only changes when the values do
+	private static String join(Collection<String> values) {
+		List<String> sorted = new ArrayList<String>(values);
+		Collections.sort(sorted);
+		StringBuilder sb = new StringBuilder();
+		for (String s : sorted) {
+			if (sb.length() > 0) {
+				sb.append(",");
+			}
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+}
@@ -1,45 +1,624 @@
 package encryptorPackage;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
 
+import ArgumentObfuscator.ArgumentCarriers;
+import classPackageObfuscate.ClassRenamer;
 import classPackageObfuscate.PackageFlattener;
+import classPackageObfuscate.SourceFiles;
+import classPackageObfuscate.XmlRewriter;
 
 public class ObfuscationCoordinator {
 
 	private static Map<String, String> fragmentDictionary = new HashMap<String, String>();
 
+	// Number of decrypted strings the generated StringDecoder keeps, a power
+	// of two
+	private static final int DECODER_CACHE_SIZE = 1024;
+
+	// Paths in the app/src/main folder
+	private static final String MANIFEST = "AndroidManifest.xml";
+	private static final String JAVA_FOLDER = "java";
+	private static final String RES_FOLDER = "res";
+	private static final String GENERATED_FOLDER = JAVA_FOLDER + "/" + ObfuscationPipeline.FLAT_PACKAGE;
+
+	/**
+	 * Obfuscates a whole Android project into the output folder: copies it,
+	 * renames the components, plans and obfuscates the sources and enables
+	 * ProGuard. The plan is written as mapping.txt before the sources are.
+	 * State left over from an earlier project is cleared first, so many
+	 * projects can be obfuscated one after another in the same JVM.
+	 * 
+	 * @param srcDir
+	 *            Root of the original project.
+	 * @param destDir
+	 *            Root of the obfuscated project.
+	 * @param incremental
+	 *            Only redo the files which changed since the last run into
+	 *            destDir.
+	 */
+	public static void ObfuscateProject(File srcDir, File destDir, boolean obfuscateArguments, boolean incremental,
+			int parallelism, ProgressListener listener) throws Exception {
+		ObfuscateProject(srcDir, destDir, obfuscateArguments, incremental, parallelism, StringMode.INLINE, listener);
+	}
+
+	// The string mode decides how the encrypted literals are stored
+	public static void ObfuscateProject(File srcDir, File destDir, boolean obfuscateArguments, boolean incremental,
+			int parallelism, StringMode stringMode, ProgressListener listener) throws Exception {
+		ObfuscationOptions options = new ObfuscationOptions();
+		options.setObfuscateArguments(obfuscateArguments);
+		options.setIncremental(incremental);
+		options.setParallelism(parallelism);
+		options.setStringMode(stringMode);
+		ObfuscateProject(srcDir, destDir, options, listener);
+	}
+
+	public static void ObfuscateProject(File srcDir, File destDir, ObfuscationOptions options,
+			ProgressListener listener) throws Exception {
+		boolean obfuscateArguments = options.isObfuscateArguments();
+		int parallelism = options.getParallelism();
+		StringMode stringMode = options.getStringMode();
+		RunReport report = new RunReport();
+
+		ClassRenamer.reset();
+		PackageFlattener.reset();
+
+		if (!destDir.exists()) {
+			destDir.mkdirs();
+		}
+		File mappingFile = options.getMappingFile() != null ? options.getMappingFile()
+				: new File(destDir, ObfuscationPlan.FILE_NAME);
+
+		if (options.isDryRun()) {
+			// Nothing of the project is copied or written, only the mapping
+			startStage(ProgressListener.RENAME, report, listener);
+			RunReport.Timer timer = report.start(RunReport.MANIFEST);
+			if (options.isIncremental()) {
+				// Components keep the names an incremental run would give them
+				ClassRenamer.setPreviousComponentNames(ObfuscationCache.load(destDir).getComponentNames());
+			}
+			SourceSet main = SourceSet.fromDirectory(new File(srcDir, "app/src/main"));
+			List<String> javaFiles = getJavaFiles(main);
+			readManifest(getManifest(main), javaFiles);
+			countManifest(timer);
+
+			startStage(ProgressListener.PLAN, report, listener);
+			planSources(main, javaFiles, mappingFile, obfuscateArguments, parallelism, stringMode, report)
+					.checkValid();
+		} else if (options.isIncremental()) {
+			ObfuscationCache cache = ObfuscationCache.load(destDir);
+
+			// The sources are read from the original project, so they are not
+			// copied
+			startStage(ProgressListener.COPY, report, listener);
+			ProjectCopier copier = createCopier(srcDir, destDir, options, report);
+			excludeRewrittenFiles(copier, srcDir);
+			copier.setOnlyChanged(true);
+			copier.copy();
+
+			startStage(ProgressListener.RENAME, report, listener);
+			RunReport.Timer timer = report.start(RunReport.MANIFEST);
+			ClassRenamer.setPreviousComponentNames(cache.getComponentNames());
+			SourceSet main = SourceSet.fromDirectory(new File(srcDir, "app/src/main"));
+			String manifest = getManifest(main);
+			XmlRewriter xml = readManifest(manifest, getJavaFiles(main));
+			cache.setComponentNames(ClassRenamer.getComponentNames());
+			File outputManifest = new File(destDir, "app/src/main/" + MANIFEST);
+			manifest = xml.rewrite(manifest);
+			if (!outputManifest.exists() || !SourceFiles.read(outputManifest).equals(manifest)) {
+				SourceFiles.write(outputManifest, manifest);
+			}
+			countManifest(timer);
+			rewriteResources(new File(srcDir, "app/src/main"), new File(destDir, "app/src/main"), xml, parallelism,
+					report);
+
+			startStage(ProgressListener.OBFUSCATE, report, listener);
+			ObfuscateIncremental(srcDir.getAbsolutePath() + "/app/src/main",
+					destDir.getAbsolutePath() + "/app/src/main", cache, obfuscateArguments, parallelism, stringMode,
+					report, mappingFile);
+
+			startStage(ProgressListener.PROGUARD, report, listener);
+			enableProGuard(destDir, report);
+
+			cache.save();
+		} else {
+			// The sources are only written once they are obfuscated, so the
+			// rest of the project is copied without them
+			startStage(ProgressListener.COPY, report, listener);
+			ProjectCopier copier = createCopier(srcDir, destDir, options, report);
+			excludeRewrittenFiles(copier, srcDir);
+			copier.copy();
+
+			startStage(ProgressListener.RENAME, report, listener);
+			RunReport.Timer timer = report.start(RunReport.MANIFEST);
+			SourceSet main = SourceSet.fromDirectory(new File(srcDir, "app/src/main"));
+			List<String> javaFiles = getJavaFiles(main);
+			String manifest = getManifest(main);
+			XmlRewriter xml = readManifest(manifest, javaFiles);
+			manifest = xml.rewrite(manifest);
+			countManifest(timer);
+			rewriteResources(new File(srcDir, "app/src/main"), new File(destDir, "app/src/main"), xml, parallelism,
+					report);
+
+			startStage(ProgressListener.OBFUSCATE, report, listener);
+			SourceSet output = obfuscateSources(main, javaFiles, manifest, obfuscateArguments, parallelism,
+					stringMode, report, mappingFile);
+			output.writeTo(new File(destDir, "app/src/main"));
+
+			startStage(ProgressListener.PROGUARD, report, listener);
+			enableProGuard(destDir, report);
+		}
+
+		String lastStage = report.finish();
+		listener.stageFinished(lastStage, report);
+		report.write(options.getReportFile() != null ? options.getReportFile() : new File(destDir, RunReport.FILE_NAME));
+	}
+
+	// Ends the stage running, if any, and starts the next.
+	private static void startStage(String stage, RunReport report, ProgressListener listener) {
+		String ended = report.startStage(stage);
+		if (ended != null) {
+			listener.stageFinished(ended, report);
+		}
+		listener.stageStarted(stage);
+	}
+
+	// The manifest pass renames every component.
+	private static void countManifest(RunReport.Timer timer) {
+		PassMetrics metrics = timer.stop();
+		metrics.addFiles(1);
+		metrics.addIdentifiers(ClassRenamer.getComponentNames().size());
+	}
+
+	// The manifest and the XML resources are written by the XML stage, the
+	// java files once they are obfuscated.
+	private static void excludeRewrittenFiles(ProjectCopier copier, File srcDir) {
+		copier.exclude(new File(srcDir, "app/src/main/" + JAVA_FOLDER));
+		copier.exclude(new File(srcDir, "app/src/main/" + MANIFEST));
+		copier.excludeFiles(new File(srcDir, "app/src/main/" + RES_FOLDER), ".xml");
+	}
+
+	/*
+	 * Reads the components of the manifest and makes the rewriter which
+	 * renames and flattens the classes that XML files refer to, the same way
+	 * the pipeline does in the java files. The root package is recorded for
+	 * the pipeline.
+	 */
+	private static XmlRewriter readManifest(String manifest, List<String> javaFiles) throws IOException {
+		ClassRenamer.readManifest(manifest);
+		PackageFlattener.packageRoot = ClassRenamer.getPackageName();
+		return new XmlRewriter(ClassRenamer.getPackageName(), XmlRewriter.flatten(getClassNames(javaFiles),
+				ClassRenamer.getComponentNames(), ObfuscationPipeline.FLAT_PACKAGE), ObfuscationPipeline.FLAT_PACKAGE);
+	}
+
+	// Rewrites the XML files of the res/ folder of app/src/main into the output.
+	private static void rewriteResources(File srcMain, File destMain, XmlRewriter xml, int parallelism,
+			RunReport report) throws IOException {
+		ResourceRewriter rewriter = new ResourceRewriter(new File(srcMain, RES_FOLDER), new File(destMain, RES_FOLDER),
+				xml);
+		rewriter.setParallelism(parallelism);
+		rewriter.setReport(report);
+		rewriter.rewrite();
+	}
+
+	private static void enableProGuard(File destDir, RunReport report) {
+		RunReport.Timer timer = report.start(RunReport.PROGUARD);
+		ProGuardEnabler.setMinifyEnabledToTrue(destDir.getAbsolutePath() + "/app/build.gradle");
+		timer.stop().addFiles(1);
+	}
+
+	private static ProjectCopier createCopier(File srcDir, File destDir, ObfuscationOptions options,
+			RunReport report) {
+		ProjectCopier copier = new ProjectCopier(srcDir, destDir);
+		copier.setReport(report);
+		copier.setSkipBuildOutputs(options.isSkipBuildOutputs());
+		copier.setLinkFiles(options.isLinkAssets());
+		copier.setParallelism(options.getParallelism());
+		return copier;
+	}
+
 	public static void Obfuscate(String copiedFileLocation) throws Exception {
+		Obfuscate(copiedFileLocation, false);
+	}
+
+	// Argument obfuscation also writes the carrier classes it uses
+	public static void Obfuscate(String copiedFileLocation, boolean obfuscateArguments) throws Exception {
+		Obfuscate(copiedFileLocation, obfuscateArguments, Runtime.getRuntime().availableProcessors());
+	}
+
+	// Parallelism is the number of files obfuscated at once
+	public static void Obfuscate(String copiedFileLocation, boolean obfuscateArguments, int parallelism)
+			throws Exception {
+		Obfuscate(copiedFileLocation, obfuscateArguments, parallelism, StringMode.INLINE);
+	}
+
+	public static void Obfuscate(String copiedFileLocation, boolean obfuscateArguments, int parallelism,
+			StringMode stringMode) throws Exception {
 
 		// Root of copied File should be specified
 		File programRootDirectory = new File(copiedFileLocation);
 
-		// Creates a package to store the generated java files
-		File generatedDirectory = new File(programRootDirectory.toString() + "\\java\\xyz");
-		generatedDirectory.mkdir();
+		// The manifest has already been renamed by ClassRenamer. Recording
+		// the root package before the manifest points at xyz.
+		SourceSet main = SourceSet.fromDirectory(programRootDirectory);
+		List<String> javaFiles = getJavaFiles(main);
+		String manifest = PackageFlattener.fixManifest(getManifest(main));
+		SourceSet output = obfuscateSources(main, javaFiles, manifest, obfuscateArguments, parallelism, stringMode,
+				new RunReport(), null);
+
+		// The resources still use the names from before the renaming
+		XmlRewriter xml = new XmlRewriter(PackageFlattener.packageRoot, XmlRewriter.flatten(getClassNames(javaFiles),
+				ClassRenamer.getComponentNames(), ObfuscationPipeline.FLAT_PACKAGE), ObfuscationPipeline.FLAT_PACKAGE);
+		rewriteResources(programRootDirectory, programRootDirectory, xml, parallelism, new RunReport());
+
+		// Remove the original files and the old packages
+		for (String path : javaFiles) {
+			new File(programRootDirectory, path).delete();
+		}
+		PackageFlattener.CleanUpOldPackages(copiedFileLocation + "/java");
+
+		output.writeTo(programRootDirectory);
+	}
+
+	/**
+	 * Obfuscates the app/src/main folder of a project held in a source set,
+	 * without reading or writing anything else. Renames the components,
+	 * obfuscates every java file and flattens the packages, like a full run of
+	 * ObfuscateProject does.
+	 * 
+	 * @param main
+	 *            Files by their path in app/src/main: AndroidManifest.xml and
+	 *            the java files under java/.
+	 * @return the obfuscated manifest and the classes of the java/xyz package,
+	 *         by the same kind of path
+	 */
+	public static SourceSet ObfuscateSources(SourceSet main, boolean obfuscateArguments, int parallelism,
+			StringMode stringMode) throws Exception {
+		ClassRenamer.reset();
+		PackageFlattener.reset();
+
+		List<String> javaFiles = getJavaFiles(main);
+		String manifest = getManifest(main);
+		manifest = readManifest(manifest, javaFiles).rewrite(manifest);
+		return obfuscateSources(main, javaFiles, manifest, obfuscateArguments, parallelism, stringMode,
+				new RunReport(), null);
+	}
+
+	/**
+	 * Plans the obfuscation of the app/src/main folder of a project held in a
+	 * source set, like ObfuscateSources, without obfuscating anything. The
+	 * plan can be checked and its mapping compared with that of another run
+	 * before anything is written.
+	 */
+	public static ObfuscationPlan PlanSources(SourceSet main, boolean obfuscateArguments, int parallelism,
+			StringMode stringMode) throws Exception {
+		ClassRenamer.reset();
+		PackageFlattener.reset();
+
+		List<String> javaFiles = getJavaFiles(main);
+		readManifest(getManifest(main), javaFiles);
+		return planSources(main, javaFiles, null, obfuscateArguments, parallelism, stringMode, new RunReport());
+	}
+
+	// Plans the java files of app/src/main, with the manifest read already,
+	// writing the mapping if a file is given.
+	private static ObfuscationPlan planSources(SourceSet main, List<String> javaFiles, File mappingFile,
+			boolean obfuscateArguments, int parallelism, StringMode stringMode, RunReport report) throws Exception {
+		// Nothing is encrypted, so no key is needed
+		ObfuscationPipeline pipeline = new ObfuscationPipeline("");
+		pipeline.setObfuscateArguments(obfuscateArguments);
+		pipeline.setParallelism(parallelism);
+		pipeline.setStringTable(stringMode.usesTable() ? new StringTableBuilder() : null);
+		pipeline.setReport(report);
+		pipeline.setMappingFile(mappingFile);
+		pipeline.setPlanOnly(true);
+		pipeline.run(main, javaFiles, new SourceSet(), GENERATED_FOLDER);
+		return pipeline.getPlan();
+	}
+
+	// Obfuscates the java files of app/src/main into the xyz package, with a
+	// manifest which has been rewritten already and its root package recorded.
+	// The plan is written to the mapping file if one is given.
+	private static SourceSet obfuscateSources(SourceSet main, List<String> javaFiles, String manifest,
+			boolean obfuscateArguments, int parallelism, StringMode stringMode, RunReport report, File mappingFile)
+			throws Exception {
+		SourceSet output = new SourceSet();
+
+		// Generate the key and the classes which decode strings with it
+		RunReport.Timer timer = report.start(RunReport.DECODER);
+		String encryptionKeyString = generateDecoderClasses(output, new HashMap<String, String>(), stringMode);
+		timer.stop().addFiles(output.getPaths().size());
+
+		output.put(MANIFEST, manifest);
+
+		// Parse each file once and apply every pass
+		ObfuscationPipeline pipeline = new ObfuscationPipeline(encryptionKeyString);
+		pipeline.setObfuscateArguments(obfuscateArguments);
+		pipeline.setParallelism(parallelism);
+		StringTableBuilder stringTable = stringMode.usesTable() ? new StringTableBuilder() : null;
+		pipeline.setStringTable(stringTable);
+		pipeline.setStringHolders(stringMode == StringMode.HOLDER);
+		pipeline.setReport(report);
+		pipeline.setMappingFile(mappingFile);
+		pipeline.run(main, javaFiles, output, GENERATED_FOLDER);
+
+		if (stringTable != null) {
+			output.put(GENERATED_FOLDER + "/StringTable.java",
+					stringTable.toSource(encryptionKeyString, stringMode == StringMode.COMPRESSED_TABLE));
+		}
+		return output;
+	}
+
+	private static String getManifest(SourceSet main) throws IOException {
+		String manifest = main.get(MANIFEST);
+		if (manifest == null) {
+			throw new IOException("No " + MANIFEST + " in the sources");
+		}
+		return manifest;
+	}
+
+	// Fully declared names of the classes of java files, e.g. a.b.C for
+	// java/a/b/C.java.
+	private static List<String> getClassNames(List<String> javaFiles) {
+		List<String> classNames = new ArrayList<String>();
+		for (String path : javaFiles) {
+			String name = path.substring(JAVA_FOLDER.length() + 1, path.length() - ".java".length());
+			classNames.add(name.replace('/', '.'));
+		}
+		return classNames;
+	}
+
+	// Java files outside the xyz package. Their packages are found by the
+	// pipeline when it indexes them.
+	private static List<String> getJavaFiles(SourceSet main) {
+		List<String> javaFiles = new ArrayList<String>();
+		for (String path : main.getPaths(JAVA_FOLDER)) {
+			if (path.endsWith(".java") && !path.contains("/" + ObfuscationPipeline.FLAT_PACKAGE + "/")) {
+				javaFiles.add(path);
+			}
+		}
+		return javaFiles;
+	}
+
+	/**
+	 * Obfuscates the sources of a project into an output project, redoing only
+	 * the files which changed since the run recorded in the cache. A file which
+	 * did not change keeps its earlier output, unless the renamed components,
+	 * packages or obfuscated methods it refers to changed.
+	 * 
+	 * @param sourceLocation
+	 *            The app/src/main folder of the original project.
+	 * @param outputLocation
+	 *            The app/src/main folder of the output project. Its manifest
+	 *            and resources must already have been rewritten, with the
+	 *            manifest read by ClassRenamer.
+	 */
+	public static void ObfuscateIncremental(String sourceLocation, String outputLocation, ObfuscationCache cache,
+			boolean obfuscateArguments, int parallelism, StringMode stringMode) throws Exception {
+		ObfuscateIncremental(sourceLocation, outputLocation, cache, obfuscateArguments, parallelism, stringMode,
+				new RunReport());
+	}
+
+	// The passes add their metrics to the report
+	public static void ObfuscateIncremental(String sourceLocation, String outputLocation, ObfuscationCache cache,
+			boolean obfuscateArguments, int parallelism, StringMode stringMode, RunReport report) throws Exception {
+		ObfuscateIncremental(sourceLocation, outputLocation, cache, obfuscateArguments, parallelism, stringMode,
+				report, null);
+	}
+
+	// The mapping covers the classes kept from the earlier run too
+	public static void ObfuscateIncremental(String sourceLocation, String outputLocation, ObfuscationCache cache,
+			boolean obfuscateArguments, int parallelism, StringMode stringMode, RunReport report, File mappingFile)
+			throws Exception {
+
+		File generatedDirectory = new File(outputLocation + "/java/xyz");
+		generatedDirectory.mkdirs();
+
+		// Keep the key of the earlier run so its encrypted strings stay valid
+		RunReport.Timer timer = report.start(RunReport.DECODER);
+		String encryptionKeyString = generateDecoderClasses(outputLocation, cache.getKeyFragments(), stringMode);
+		timer.stop().addFiles(2);
+		cache.setKeyFragments(getKeyFragments());
+		// Output hiding arguments behind Ag is not reused with carriers, nor
+		// signatures cached before each declaration was counted, nor calls
+		// cached before those nested in arguments were
+		cache.checkConfiguration("arguments=" + (obfuscateArguments ? "carriers3" : "false") + ";strings="
+				+ stringMode + ";key=" + ObfuscationCache.hash(encryptionKeyString));
+
+		// Find all the original files and their packages
+		File sourceRoot = new File(sourceLocation + "/java");
+		FileWalker walker = new FileWalker(sourceRoot.getPath());
+		List<File> javaFiles = walker.walk();
+
+		PackageFlattener.packageRoot = ClassRenamer.getPackageName();
+
+		// Only the changed files are parsed, so the symbols of the others come
+		// from the walk and the cache
+		SymbolIndex index = new SymbolIndex();
+		index.addManifest(PackageFlattener.packageRoot, ClassRenamer.getComponentNames());
+		index.addPackages(walker.getPackages());
+		Set<String> packages = index.getPackages();
+		Map<String, String> componentNames = index.getComponents();
+
+		Map<String, File> files = new LinkedHashMap<String, File>();
+		Map<String, String> sources = new HashMap<String, String>();
+		Map<String, String> contentHashes = new HashMap<String, String>();
+		for (File f : javaFiles) {
+			String relativePath = sourceRoot.toURI().relativize(f.toURI()).getPath();
+			String source = SourceFiles.read(f);
+			files.put(relativePath, f);
+			sources.put(relativePath, source);
+			contentHashes.put(relativePath, ObfuscationCache.hash(source));
+		}
 
-		// Create the globalList java file
-		File fileWithListOfVariables = new File(programRootDirectory.toString() + "\\java\\xyz\\GlobalList.java");
-		if (!fileWithListOfVariables.exists()) {
-			fileWithListOfVariables.createNewFile();
+		// Remove the output of files which no longer exist
+		for (String relativePath : cache.getSourceFiles()) {
+			if (!files.containsKey(relativePath)) {
+				new File(generatedDirectory, cache.getOutput(relativePath)).delete();
+				cache.removeFile(relativePath);
+			}
 		}
 
-		// Create the decoder java file
-		File fileWithStringDecoder = new File(programRootDirectory.toString() + "\\java\\xyz\\StringDecoder.java");
-		if (!fileWithStringDecoder.exists()) {
-			fileWithStringDecoder.createNewFile();
+		// Only files which changed have to be parsed to find their methods
+		ArgumentCarriers carriers = null;
+		if (obfuscateArguments) {
+			for (String relativePath : files.keySet()) {
+				String contentHash = contentHashes.get(relativePath);
+				Set<String> declared = cache.getDeclaredMethods(relativePath, contentHash);
+				Set<String> called = cache.getCalledMethods(relativePath, contentHash);
+				List<String> signatures = cache.getMethodSignatures(relativePath, contentHash);
+				if (declared == null || called == null || signatures == null) {
+					SymbolIndex fileSymbols = new SymbolIndex();
+					fileSymbols.add(ObfuscationPipeline.parse(sources.get(relativePath)));
+					declared = fileSymbols.getDeclaredMethods();
+					called = fileSymbols.getCalledMethods();
+					signatures = fileSymbols.getMethodSignatures();
+					cache.setMethods(relativePath, contentHash, declared, called, signatures);
+				}
+				index.addMethods(declared, called);
+				index.addMethodSignatures(signatures);
+			}
+			carriers = new ArgumentCarriers(index.getMethodsToModify(), index.getMethodSignatures());
 		}
 
+		// Pick the files whose fingerprint changed. The indices of a string
+		// table are numbered over the whole project, so with a table every
+		// file is redone.
+		timer = report.start(RunReport.REUSED);
+		int reused = 0;
+		List<File> changedFiles = new ArrayList<File>();
+		ObfuscationPlan plan = new ObfuscationPlan(PackageFlattener.packageRoot, componentNames,
+				ObfuscationPipeline.FLAT_PACKAGE);
+		for (String relativePath : files.keySet()) {
+			String fingerprint = ObfuscationCache.hash(contentHashes.get(relativePath),
+					getDependencies(sources.get(relativePath), componentNames, packages, carriers));
+			String output = getOutputFileName(relativePath);
+			if (!stringMode.usesTable() && fingerprint.equals(cache.getFingerprint(relativePath))
+					&& new File(generatedDirectory, output).exists()) {
+				plan.addClass(relativePath.substring(0, relativePath.length() - ".java".length()).replace("/", "."),
+						output.substring(0, output.length() - ".java".length()));
+				reused++;
+				continue;
+			}
+
+			// The class may have been renamed since the earlier run
+			String oldOutput = cache.getOutput(relativePath);
+			if (oldOutput != null && !oldOutput.equals(output)) {
+				new File(generatedDirectory, oldOutput).delete();
+			}
+			changedFiles.add(files.get(relativePath));
+			cache.setFile(relativePath, fingerprint, output);
+		}
+
+		timer.stop().addFiles(reused);
+
+		ObfuscationPipeline pipeline = new ObfuscationPipeline(encryptionKeyString, generatedDirectory);
+		pipeline.setSymbolIndex(index);
+		pipeline.setPlan(plan);
+		pipeline.setMappingFile(mappingFile);
+		pipeline.setCarriers(carriers);
+		pipeline.setParallelism(parallelism);
+		StringTableBuilder stringTable = stringMode.usesTable() ? new StringTableBuilder() : null;
+		pipeline.setStringTable(stringTable);
+		pipeline.setStringHolders(stringMode == StringMode.HOLDER);
+		pipeline.setReport(report);
+		pipeline.run(changedFiles);
+
+		if (stringTable != null) {
+			stringTable.write(generatedDirectory, encryptionKeyString, stringMode == StringMode.COMPRESSED_TABLE);
+		} else {
+			new File(generatedDirectory, "StringTable.java").delete();
+		}
+	}
+
+	// Renamed components, packages and obfuscated methods with their carriers
+	// that a source file mentions. The output of the file depends on these as
+	// well as on its own contents.
+	private static String getDependencies(String source, Map<String, String> componentNames, Set<String> packages,
+			ArgumentCarriers carriers) {
+		Set<String> dependencies = new TreeSet<String>();
+		for (Map.Entry<String, String> entry : componentNames.entrySet()) {
+			String className = entry.getKey().substring(entry.getKey().lastIndexOf(".") + 1);
+			if (source.contains(className)) {
+				dependencies.add(entry.getKey() + "=" + entry.getValue());
+			}
+		}
+		for (String pkg : packages) {
+			if (source.contains(pkg)) {
+				dependencies.add(pkg);
+			}
+		}
+		if (carriers != null) {
+			for (String method : carriers.getMethodNames()) {
+				if (source.contains(method)) {
+					dependencies.add(method + carriers.describe(method));
+				}
+			}
+		}
+		return dependencies.toString();
+	}
+
+	// Name of the obfuscated file written for a source file, given its path
+	// relative to the java folder.
+	private static String getOutputFileName(String relativePath) {
+		String declaredName = relativePath.substring(0, relativePath.length() - ".java".length()).replace("/", ".");
+		String className = declaredName.substring(declaredName.lastIndexOf(".") + 1);
+		String obfuscatedName = ClassRenamer.getObfuscatedClassName(declaredName);
+		return (obfuscatedName != null ? obfuscatedName : className) + ".java";
+	}
+
+	/**
+	 * Writes the GlobalList and StringDecoder classes into the xyz package.
+	 * 
+	 * @param mainLocation
+	 *            The app/src/main folder of the output project.
+	 * @param previousFragments
+	 *            Key fragments of an earlier run to reuse, empty to pick new
+	 *            ones.
+	 * @return the encryption key string
+	 */
+	public static String generateDecoderClasses(String mainLocation, Map<String, String> previousFragments)
+			throws Exception {
+		return generateDecoderClasses(mainLocation, previousFragments, StringMode.INLINE);
+	}
+
+	/**
+	 * Writes the GlobalList and StringDecoder classes into the xyz package,
+	 * with StringDecoder.get(index) for a string table when the mode uses one.
+	 */
+	public static String generateDecoderClasses(String mainLocation, Map<String, String> previousFragments,
+			StringMode stringMode) throws Exception {
+		SourceSet classes = new SourceSet();
+		String encryptionKeyString = generateDecoderClasses(classes, previousFragments, stringMode);
+		classes.writeTo(new File(mainLocation));
+		return encryptionKeyString;
+	}
+
+	/**
+	 * Same as above, adding the classes to a source set as
+	 * java/xyz/GlobalList.java and java/xyz/StringDecoder.java.
+	 */
+	public static String generateDecoderClasses(SourceSet output, Map<String, String> previousFragments,
+			StringMode stringMode) throws Exception {
+
+		fragmentDictionary.clear();
+
 		// CREATE THE GLOBAL-LIST CLASS
 
-		FileWriter fw = new FileWriter(fileWithListOfVariables.getAbsoluteFile());
-		BufferedWriter bw = new BufferedWriter(fw);
+		// Each class is built in memory and written in one go
+		StringWriter bw = new StringWriter();
 
 		bw.write("package xyz;");
 		bw.write("public class GlobalList { \n");
@@ -85,8 +664,14 @@ public class ObfuscationCoordinator {
 				}
 
 				// If the loop corresponds to the fragment number, store it
-				// in the dictionary
-				if (i * numberOfLoops + j == fragmentNumber1 || i * numberOfLoops + j == fragmentNumber2
+				// in the dictionary. Fragments of an earlier run are kept so
+				// that its encrypted strings stay valid.
+				if (!previousFragments.isEmpty()) {
+					if (previousFragments.containsKey(variableName)) {
+						sb = new StringBuilder(previousFragments.get(variableName));
+						fragmentDictionary.put(variableName, sb.toString());
+					}
+				} else if (i * numberOfLoops + j == fragmentNumber1 || i * numberOfLoops + j == fragmentNumber2
 						|| i * numberOfLoops + j == fragmentNumber3 || i * numberOfLoops + j == fragmentNumber4) {
 					fragmentDictionary.put(variableName, sb.toString());
 				}
@@ -97,13 +682,13 @@ public class ObfuscationCoordinator {
 			}
 		}
 		bw.write("}");
-		bw.close();
+		output.put(GENERATED_FOLDER + "/GlobalList.java", bw.toString());
 
 		// Retrieve set of dictionary keys
 		String encryptionKeyString = "";
 		Set<String> dictionaryKeys = fragmentDictionary.keySet();
 
-		System.out.println("DICTIONARY STRINGS: " + dictionaryKeys.toString());
+		// System.out.println("DICTIONARY STRINGS: " + dictionaryKeys.toString());
 
 		// Iterate through keys generating the encryptedKeyString
 		for (Iterator<String> x = dictionaryKeys.iterator(); x.hasNext();) {
@@ -117,11 +702,10 @@ public class ObfuscationCoordinator {
 		// CREATE THE STRING-DECODER CLASS
 
 		// Generate four variables for the global list
-		fw = new FileWriter(fileWithStringDecoder.getAbsoluteFile());
-		bw = new BufferedWriter(fw);
+		bw = new StringWriter();
 
 		// package
-		bw.write("package xyz;");
+		bw.write("package xyz;\n");
 
 		// imports
 		bw.write("import java.security.Key; \n");
@@ -130,7 +714,14 @@ public class ObfuscationCoordinator {
 		bw.write("import javax.crypto.Cipher;  \n");
 		bw.write("import java.security.MessageDigest; \n");
 		bw.write("import java.util.Arrays; \n");
+		bw.write("import java.util.concurrent.atomic.AtomicReferenceArray; \n");
 		bw.write("import javax.crypto.spec.SecretKeySpec;   \n");
+		if (stringMode.usesTable()) {
+			bw.write("import java.io.ByteArrayInputStream; \n");
+			bw.write("import java.io.ByteArrayOutputStream; \n");
+			bw.write("import java.io.DataInputStream; \n");
+			bw.write("import java.util.zip.InflaterInputStream; \n");
+		}
 
 		bw.write("public class StringDecoder { \n");
 
@@ -147,28 +738,72 @@ public class ObfuscationCoordinator {
 			}
 		}
 
-		bw.write("private static String secretKey = " + globalListEncryptionKeyVariable + ";\n");
+		// The key is derived once when the class loads
+		bw.write("private static final Key KEY = generateKeyFromString(" + globalListEncryptionKeyVariable + ");\n");
+
+		// Ciphers are not thread safe, so each thread gets its own, ready
+		// to decrypt
+		bw.write("private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<Cipher>() {\n");
+		bw.write("@Override\n");
+		bw.write("protected Cipher initialValue() {\n");
+		bw.write("try {\n");
+		bw.write("final Cipher c = Cipher.getInstance(ALGORITHM);\n");
+		bw.write("c.init(Cipher.DECRYPT_MODE, KEY);\n");
+		bw.write("return c;\n");
+		bw.write("} catch (Exception ex) {\n");
+		bw.write("return null;\n");
+		bw.write("}\n");
+		bw.write("}\n");
+		bw.write("};\n");
+
+		// Decrypted strings are cached in a fixed size table indexed by the
+		// hash of the encrypted literal. The literal of a call site is always
+		// the same interned string, whose hash is cached, so a repeated
+		// decrypt is a hash lookup, an array load and a reference compare.
+		// Entries are immutable and a colliding literal just replaces the
+		// entry, so no locks are needed.
+		bw.write("private static final int CACHE_SIZE = " + DECODER_CACHE_SIZE + ";\n");
+		bw.write("private static final AtomicReferenceArray<Entry> CACHE = new AtomicReferenceArray<Entry>(CACHE_SIZE);\n");
+
+		bw.write("private static final class Entry {\n");
+		bw.write("final String encryptedValue;\n");
+		bw.write("final String decryptedValue;\n");
+		bw.write("Entry(String encryptedValue, String decryptedValue) {\n");
+		bw.write("this.encryptedValue = encryptedValue;\n");
+		bw.write("this.decryptedValue = decryptedValue;\n");
+		bw.write("}\n");
+		bw.write("}\n");
 
-		// Generate the decoder class
+		// Generate the decoder method
 		bw.write("public static String decrypt(final String encryptedValue) { \n");
 
+		bw.write("final int index = encryptedValue.hashCode() & (CACHE_SIZE - 1);\n");
+		bw.write("final Entry entry = CACHE.get(index);\n");
+		bw.write("if (entry != null && (entry.encryptedValue == encryptedValue || entry.encryptedValue.equals(encryptedValue))) {\n");
+		bw.write("return entry.decryptedValue;\n");
+		bw.write("}\n");
+
 		bw.write("String decryptedValue = null; \n");
 
 		bw.write("try {\n");
 
-		bw.write("final Key key = generateKeyFromString(secretKey);\n");
-		bw.write("final Cipher c = Cipher.getInstance(ALGORITHM);\n");
-		bw.write("c.init(Cipher.DECRYPT_MODE, key);\n");
 		bw.write("final byte[] decorVal = Base64.decode(encryptedValue, Base64.DEFAULT);\n");
-		bw.write("final byte[] decValue = c.doFinal(decorVal);\n");
-		bw.write("decryptedValue = new String(decValue);\n");
+		bw.write("final byte[] decValue = CIPHER.get().doFinal(decorVal);\n");
+		bw.write("decryptedValue = new String(decValue, \"UTF-8\");\n");
+		bw.write("CACHE.set(index, new Entry(encryptedValue, decryptedValue));\n");
 		bw.write("} catch (Exception ex) {\n");
 
+		// Drop a cipher which failed in case it was left half way through
+		bw.write("CIPHER.remove();\n");
 		bw.write("	}\n");
 
 		bw.write("return decryptedValue;\n");
 		bw.write("	}\n");
 
+		if (stringMode.usesTable()) {
+			writeStringTableDecoder(bw);
+		}
+
 		// Generate the SHA key generator class
 		bw.write("private static Key generateKeyFromString(final String secKey) {\n");
 
@@ -191,16 +826,73 @@ public class ObfuscationCoordinator {
 
 		bw.write("}");
 
-		bw.close();
-		
-		// Iterates over all the files, applying string encryption
-		FileWalker fileWalker = new FileWalker(copiedFileLocation + "\\java");
-		fileWalker.walk(copiedFileLocation + "\\java", encryptionKeyString);
+		output.put(GENERATED_FOLDER + "/StringDecoder.java", bw.toString());
+
+		return encryptionKeyString;
+	}
+
+	// Generates StringDecoder.get(index), which reads a literal from the
+	// StringTable class. The table is decrypted the first time any literal
+	// is read, by the lazy holder class, and each string is then built the
+	// first time its index is read.
+	private static void writeStringTableDecoder(Writer bw) throws IOException {
+		bw.write("public static String get(final int index) {\n");
+		bw.write("String value = Table.VALUES[index];\n");
+		bw.write("if (value == null) {\n");
+		bw.write("value = Table.decode(index);\n");
+		bw.write("Table.VALUES[index] = value;\n");
+		bw.write("}\n");
+		bw.write("return value;\n");
+		bw.write("}\n");
+
+		bw.write("private static final class Table {\n");
+		bw.write("static final String[] VALUES = new String[StringTable.COUNT];\n");
+		bw.write("static final int[] OFFSETS = new int[StringTable.COUNT + 1];\n");
+		bw.write("static final byte[] DATA = load();\n");
+
+		bw.write("private static byte[] load() {\n");
+		bw.write("try {\n");
+		bw.write("final StringBuilder sb = new StringBuilder();\n");
+		bw.write("for (String chunk : StringTable.CHUNKS) {\n");
+		bw.write("sb.append(chunk);\n");
+		bw.write("}\n");
+		bw.write("byte[] table = CIPHER.get().doFinal(Base64.decode(sb.toString(), Base64.DEFAULT));\n");
+		bw.write("if (StringTable.COMPRESSED) {\n");
+		bw.write("final InflaterInputStream inflater = new InflaterInputStream(new ByteArrayInputStream(table));\n");
+		bw.write("final ByteArrayOutputStream out = new ByteArrayOutputStream();\n");
+		bw.write("final byte[] buffer = new byte[4096];\n");
+		bw.write("int n;\n");
+		bw.write("while ((n = inflater.read(buffer)) != -1) {\n");
+		bw.write("out.write(buffer, 0, n);\n");
+		bw.write("}\n");
+		bw.write("inflater.close();\n");
+		bw.write("table = out.toByteArray();\n");
+		bw.write("}\n");
+		bw.write("final DataInputStream in = new DataInputStream(new ByteArrayInputStream(table));\n");
+		bw.write("in.readInt();\n");
+		bw.write("for (int i = 0; i < OFFSETS.length; i++) {\n");
+		bw.write("OFFSETS[i] = in.readInt();\n");
+		bw.write("}\n");
+		bw.write("return Arrays.copyOfRange(table, 4 * (OFFSETS.length + 1), table.length);\n");
+		bw.write("} catch (Exception ex) {\n");
+		bw.write("CIPHER.remove();\n");
+		bw.write("return new byte[0];\n");
+		bw.write("}\n");
+		bw.write("}\n");
+
+		bw.write("static String decode(final int index) {\n");
+		bw.write("try {\n");
+		bw.write("return new String(DATA, OFFSETS[index], OFFSETS[index + 1] - OFFSETS[index], \"UTF-8\");\n");
+		bw.write("} catch (Exception ex) {\n");
+		bw.write("return null;\n");
+		bw.write("}\n");
+		bw.write("}\n");
+		bw.write("}\n");
+	}
 
-		// Apply Package Obfuscation fixes
-		PackageFlattener.ManifestFixer(copiedFileLocation);
-		PackageFlattener.PackageFixer(copiedFileLocation + "\\java\\xyz");
-		PackageFlattener.CleanUpOldPackages(copiedFileLocation + "\\java");
+	/** Key fragments picked by the last call to generateDecoderClasses */
+	public static Map<String, String> getKeyFragments() {
+		return new HashMap<String, String>(fragmentDictionary);
 	}
 
 }
@@ -0,0 +1,275 @@
+package encryptorPackage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+
+import classPackageObfuscate.SourceFiles;
+
+/**
+ * Keeps a warmed up obfuscator running in the background, like the Gradle
+ * daemon, so a build does not pay for starting a JVM, loading javaparser and
+ * JIT compiling the passes on every run. Jobs are sent by DaemonClient over a
+ * socket on the loopback interface and run one at a time, as the passes keep
+ * some of their state in static fields.
+ *
+ * <pre>
+ * java encryptorPackage.ObfuscationDaemon [--port &lt;n&gt;] [--info &lt;file&gt;] [--warmup &lt;runs&gt;]
+ * </pre>
+ *
+ * The port, any free one by default, and a random token are written to the
+ * info file, ~/.obfuscation-daemon by default, which only its owner can read.
+ * A client sends the token on the first line and a command on the second,
+ * its fields separated by tabs:
+ *
+ * <pre>
+ * RUN     &lt;working folder&gt;  &lt;ObfuscatorCLI arguments&gt;...
+ * STATUS
+ * STOP
+ * </pre>
+ *
+ * For RUN the daemon sends back the lines ObfuscatorCLI prints, errors
+ * included, then EXIT and the exit code. STATUS answers with STATUS, the jobs
+ * run and the milliseconds the daemon has been up, and STOP with STOPPED. A
+ * connection which has not sent its command within ten seconds is closed.
+ */
+public class ObfuscationDaemon {
+
+	public static final String INFO_FILE = ".obfuscation-daemon";
+
+	private static final String ENCODING = "UTF-8";
+
+	private static final int DEFAULT_WARMUP_RUNS = 3;
+
+	// How long a client has to send its token and command before the
+	// connection is dropped, so one that never does cannot hold a thread
+	private static final int COMMAND_TIMEOUT_MILLIS = 10000;
+
+	private final ServerSocket serverSocket;
+	private final File infoFile;
+	private final String token;
+	private final ExecutorService connections = Executors.newCachedThreadPool();
+	private final Object jobLock = new Object();
+	private final long startTime = System.currentTimeMillis();
+	private final AtomicInteger jobs = new AtomicInteger();
+
+	/**
+	 * Opens the socket and writes the info file.
+	 *
+	 * @param port
+	 *            Port to listen on, or 0 for any free one.
+	 */
+	public ObfuscationDaemon(int port, File infoFile) throws IOException {
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.infoFile = infoFile;
+		this.token = new BigInteger(130, new SecureRandom()).toString(32);
+		try {
+			writeInfoFile();
+		} catch (IOException e) {
+			serverSocket.close();
+			throw e;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = 0;
+		int warmupRuns = DEFAULT_WARMUP_RUNS;
+		File infoFile = getDefaultInfoFile();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--port") && i + 1 < args.length) {
+				port = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("--info") && i + 1 < args.length) {
+				infoFile = new File(args[++i]);
+			} else if (args[i].equals("--warmup") && i + 1 < args.length) {
+				warmupRuns = Integer.parseInt(args[++i]);
+			} else {
+				System.err.println("Usage: ObfuscationDaemon [--port <n>] [--info <file>] [--warmup <runs>]");
+				System.exit(ObfuscatorCLI.EXIT_USAGE);
+			}
+		}
+
+		ObfuscationDaemon daemon = new ObfuscationDaemon(port, infoFile);
+		daemon.warmUp(warmupRuns);
+		System.out.println("LISTENING\t" + daemon.getPort() + "\t" + infoFile.getAbsolutePath());
+		System.out.flush();
+		daemon.serve();
+	}
+
+	/** ~/.obfuscation-daemon */
+	public static File getDefaultInfoFile() {
+		return new File(System.getProperty("user.home"), INFO_FILE);
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Obfuscates a small project in memory a few times, so the first job
+	 * already runs on loaded and compiled classes.
+	 */
+	public void warmUp(int runs) throws Exception {
+		SourceSet main = new SourceSet();
+		main.put("AndroidManifest.xml", "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+				+ "<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\" package=\"com.warm\">\n"
+				+ "    <application>\n" + "        <activity android:name=\".MainActivity\" />\n"
+				+ "    </application>\n" + "</manifest>\n");
+		main.put("java/com/warm/MainActivity.java", "package com.warm;\n\n" + "import com.warm.util.Text;\n\n"
+				+ "public class MainActivity {\n" + "\tpublic String show(String name, int count) {\n"
+				+ "\t\tif (count > 1) {\n" + "\t\t\treturn Text.join(\"Hello \", name);\n"
+				+ "\t\t} else {\n" + "\t\t\treturn \"Bye\";\n" + "\t\t}\n" + "\t}\n" + "}\n");
+		main.put("java/com/warm/util/Text.java", "package com.warm.util;\n\n" + "public class Text {\n"
+				+ "\tpublic static String join(String a, String b) {\n" + "\t\treturn a + b;\n" + "\t}\n" + "}\n");
+		for (int i = 0; i < runs; i++) {
+			synchronized (jobLock) {
+				ObfuscationCoordinator.ObfuscateSources(main, true, 1, StringMode.INLINE);
+			}
+		}
+	}
+
+	/** Accepts connections until a client stops the daemon */
+	public void serve() throws IOException {
+		try {
+			while (true) {
+				final Socket socket;
+				try {
+					socket = serverSocket.accept();
+				} catch (SocketException e) {
+					// Closed by STOP
+					break;
+				}
+				connections.execute(new Runnable() {
+					@Override
+					public void run() {
+						handle(socket);
+					}
+				});
+			}
+		} finally {
+			close();
+		}
+	}
+
+	/** Stops accepting jobs and removes the info file */
+	public void close() throws IOException {
+		serverSocket.close();
+		connections.shutdown();
+		synchronized (this) {
+			// Another daemon may have taken the file over since
+			if (infoFile.isFile() && FileUtils.readFileToString(infoFile, ENCODING).contains(token)) {
+				FileUtils.forceDelete(infoFile);
+			}
+		}
+	}
+
+	// Runs the command of one connection.
+	private void handle(Socket socket) {
+		try {
+			socket.setSoTimeout(COMMAND_TIMEOUT_MILLIS);
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), ENCODING));
+			PrintStream out = new PrintStream(socket.getOutputStream(), true, ENCODING);
+			try {
+				if (!isToken(in.readLine())) {
+					out.println("DENIED");
+					return;
+				}
+				String line = in.readLine();
+				// Nothing more is read, and a job may take longer than the timeout
+				socket.setSoTimeout(0);
+				String[] fields = line != null ? line.split("\t", -1) : new String[] { "" };
+				if (fields[0].equals("RUN") && fields.length >= 2) {
+					out.println("EXIT\t" + runJob(new File(fields[1]), Arrays.copyOfRange(fields, 2, fields.length),
+							out));
+				} else if (fields[0].equals("STATUS")) {
+					out.println("STATUS\t" + jobs.get() + "\t" + (System.currentTimeMillis() - startTime));
+				} else if (fields[0].equals("STOP")) {
+					out.println("STOPPED");
+					serverSocket.close();
+				} else {
+					out.println("UNKNOWN\t" + fields[0]);
+				}
+			} finally {
+				socket.close();
+			}
+		} catch (SocketTimeoutException e) {
+			// The client sent no command in time; the socket is closed
+		} catch (IOException e) {
+			// The client went away; its job, if any, has run regardless
+			e.printStackTrace();
+		}
+	}
+
+	// Compares in constant time, so the time taken does not tell a client
+	// how much of the token it got right.
+	private boolean isToken(String line) throws UnsupportedEncodingException {
+		return line != null && MessageDigest.isEqual(token.getBytes(ENCODING), line.getBytes(ENCODING));
+	}
+
+	// Runs one command line after the jobs before it.
+	private int runJob(File workingDir, String[] args, PrintStream out) {
+		for (String arg : args) {
+			if (arg.equals("--watch")) {
+				out.println("--watch cannot run in the daemon");
+				return ObfuscatorCLI.EXIT_USAGE;
+			}
+		}
+		synchronized (jobLock) {
+			jobs.incrementAndGet();
+			return ObfuscatorCLI.run(args, workingDir, out, out);
+		}
+	}
+
+	// Writes "<port>\t<token>", readable by the owner only where the file
+	// system allows it. The temporary file is created with those permissions,
+	// so no one else can open it before the token is written, and is never
+	// one which already exists or a link to another file.
+	private void writeInfoFile() throws IOException {
+		File temp = new File(infoFile.getAbsolutePath() + ".tmp");
+		FileUtils.forceMkdir(temp.getAbsoluteFile().getParentFile());
+		try {
+			try {
+				Files.createFile(temp.toPath(), PosixFilePermissions.asFileAttribute(
+						EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+			} catch (UnsupportedOperationException e) {
+				// Not a POSIX file system; the file is in the home folder
+				Files.createFile(temp.toPath());
+			}
+		} catch (FileAlreadyExistsException e) {
+			throw new IOException(temp + " already exists; delete it if no other daemon is starting", e);
+		}
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+				Files.newOutputStream(temp.toPath(), StandardOpenOption.WRITE, LinkOption.NOFOLLOW_LINKS), ENCODING));
+		writer.print(getPort() + "\t" + token + "\n");
+		writer.close();
+		if (writer.checkError()) {
+			throw new IOException("Cannot write " + temp);
+		}
+		SourceFiles.moveOver(temp, infoFile);
+	}
+}
@@ -0,0 +1,113 @@
+package encryptorPackage;
+
+import java.io.File;
+
+/**
+ * Settings of a project run with ObfuscationCoordinator.ObfuscateProject.
+ * The defaults are what the GUI uses.
+ */
+public class ObfuscationOptions {
+
+	private boolean obfuscateArguments = false;
+	private boolean incremental = false;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private StringMode stringMode = StringMode.INLINE;
+	private boolean skipBuildOutputs = false;
+	private boolean linkAssets = false;
+	private File reportFile = null;
+	private File mappingFile = null;
+	private boolean dryRun = false;
+
+	public boolean isObfuscateArguments() {
+		return obfuscateArguments;
+	}
+
+	/** Also change the arguments of methods, which takes longer */
+	public void setObfuscateArguments(boolean obfuscateArguments) {
+		this.obfuscateArguments = obfuscateArguments;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/** Only redo the files which changed since the last run into the output */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/** Number of files worked on at once */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public StringMode getStringMode() {
+		return stringMode;
+	}
+
+	/** How the encrypted literals are stored */
+	public void setStringMode(StringMode stringMode) {
+		this.stringMode = stringMode;
+	}
+
+	public boolean isSkipBuildOutputs() {
+		return skipBuildOutputs;
+	}
+
+	/** Leave the build/ and .gradle/ folders out of the output */
+	public void setSkipBuildOutputs(boolean skipBuildOutputs) {
+		this.skipBuildOutputs = skipBuildOutputs;
+	}
+
+	public boolean isLinkAssets() {
+		return linkAssets;
+	}
+
+	/**
+	 * Hard link the files which are passed through unchanged instead of
+	 * copying them. The output then shares them with the original project.
+	 */
+	public void setLinkAssets(boolean linkAssets) {
+		this.linkAssets = linkAssets;
+	}
+
+	public File getReportFile() {
+		return reportFile;
+	}
+
+	/**
+	 * Where to write the JSON report of the run, or null for
+	 * obfuscation-report.json in the output project.
+	 */
+	public void setReportFile(File reportFile) {
+		this.reportFile = reportFile;
+	}
+
+	public File getMappingFile() {
+		return mappingFile;
+	}
+
+	/**
+	 * Where to write the mapping of the original names to the obfuscated
+	 * ones, or null for mapping.txt in the output project.
+	 */
+	public void setMappingFile(File mappingFile) {
+		this.mappingFile = mappingFile;
+	}
+
+	public boolean isDryRun() {
+		return dryRun;
+	}
+
+	/**
+	 * Only plan the run and write the mapping, without copying or writing
+	 * anything of the project.
+	 */
+	public void setDryRun(boolean dryRun) {
+		this.dryRun = dryRun;
+	}
+}
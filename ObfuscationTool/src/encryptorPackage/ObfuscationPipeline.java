@@ -0,0 +1,481 @@
+package encryptorPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.javaparser.ASTHelper;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseException;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+
+import ArgumentObfuscator.ArgumentCarriers;
+import ArgumentObfuscator.ArgumentObfuscator;
+import classPackageObfuscate.ClassRenameVisitor;
+import classPackageObfuscate.ClassRenamer;
+import classPackageObfuscate.PackageFlattenVisitor;
+import classPackageObfuscate.PackageFlattener;
+import classPackageObfuscate.SourceFiles;
+
+/**
+ * Runs every obfuscation pass over a Java file with a single parse and a
+ * single write. The file is parsed into one CompilationUnit, the passes are
+ * applied to it in a fixed order and the result is written straight into the
+ * flattened package.
+ */
+public class ObfuscationPipeline {
+
+	// Package that every class ends up in.
+	public static final String FLAT_PACKAGE = "xyz";
+
+	private final String keyString;
+	private final File outputDirectory;
+	private boolean obfuscateArguments = false;
+	private Set<String> methodNamesToModify = null;
+	private ArgumentCarriers carriers = null;
+	private StringTableBuilder stringTable = null;
+	private boolean stringHolders = false;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private RunReport report = new RunReport();
+	private SymbolIndex symbolIndex = null;
+	private ObfuscationPlan plan = null;
+	private File mappingFile = null;
+	private boolean planOnly = false;
+
+	/**
+	 * @param keyString
+	 *            Key used to encrypt the string literals.
+	 * @param outputDirectory
+	 *            Directory of the flattened package.
+	 */
+	public ObfuscationPipeline(String keyString, File outputDirectory) {
+		this.keyString = keyString;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/** A pipeline which only runs on source sets */
+	public ObfuscationPipeline(String keyString) {
+		this(keyString, null);
+	}
+
+	/**
+	 * Also hide method arguments in carrier classes, which are written to the
+	 * flattened package with the files. See ArgumentCarriers.
+	 */
+	public void setObfuscateArguments(boolean obfuscateArguments) {
+		this.obfuscateArguments = obfuscateArguments;
+	}
+
+	/**
+	 * Hide the arguments of the given methods instead of the ones found in the
+	 * files passed to run, for when only part of the project is obfuscated.
+	 * Their declarations must be in those files or in the symbol index.
+	 */
+	public void setMethodNamesToModify(Set<String> methodNamesToModify) {
+		this.methodNamesToModify = methodNamesToModify;
+		this.obfuscateArguments = methodNamesToModify != null;
+	}
+
+	/**
+	 * Hide arguments in these carriers instead of ones worked out from the
+	 * symbol index, for when the index already held some of the files passed
+	 * to run and would count their declarations twice.
+	 */
+	public void setCarriers(ArgumentCarriers carriers) {
+		this.carriers = carriers;
+		this.obfuscateArguments = carriers != null;
+	}
+
+	/**
+	 * Number the literals in a table instead of inlining them. Every literal
+	 * of the files passed to run is added to the table before it is
+	 * numbered.
+	 */
+	public void setStringTable(StringTableBuilder stringTable) {
+		this.stringTable = stringTable;
+	}
+
+	/**
+	 * Decrypt each literal once into a holder field of its class instead of
+	 * at every call site. Ignored when a string table is set.
+	 */
+	public void setStringHolders(boolean stringHolders) {
+		this.stringHolders = stringHolders;
+	}
+
+	/** Number of files processed at once, defaults to the number of cores */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Index to add the parsed files to, for when it already holds the
+	 * symbols of files which are not obfuscated again. By default each run
+	 * builds its own.
+	 */
+	public void setSymbolIndex(SymbolIndex symbolIndex) {
+		this.symbolIndex = symbolIndex;
+	}
+
+	/**
+	 * Plan to add the files to, for when it already holds classes which are
+	 * not obfuscated again. By default the first run makes one.
+	 */
+	public void setPlan(ObfuscationPlan plan) {
+		this.plan = plan;
+	}
+
+	/** The plan of the last run */
+	public ObfuscationPlan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * Where to write the plan as a mapping file, once it is made and before
+	 * any file is written, or null not to write it.
+	 */
+	public void setMappingFile(File mappingFile) {
+		this.mappingFile = mappingFile;
+	}
+
+	/**
+	 * Only make the plan, without changing or writing any file, for a dry
+	 * run. A plan which is not valid is then not an error.
+	 */
+	public void setPlanOnly(boolean planOnly) {
+		this.planOnly = planOnly;
+	}
+
+	/** Report the passes add their metrics to */
+	public void setReport(RunReport report) {
+		this.report = report;
+	}
+
+	/**
+	 * Obfuscates the files and writes them into the flattened package. Files
+	 * are processed in parallel, but the output of each file only depends on
+	 * its own contents, so the result is the same for any thread order. The
+	 * manifest must already have been read by ClassRenamer and
+	 * PackageFlattener.
+	 *
+	 * Runs in two phases: every file is parsed and planned first, then each
+	 * is written from the plan. Nothing is written if the plan is not valid.
+	 */
+	public void run(List<File> files) throws IOException, ParseException {
+		final File[] fileArray = files.toArray(new File[files.size()]);
+		run(fileArray.length, new Sources() {
+			@Override
+			public String getFileName(int i) {
+				return fileArray[i].getName();
+			}
+
+			@Override
+			public String read(int i) throws IOException {
+				return SourceFiles.read(fileArray[i]);
+			}
+
+			@Override
+			public void write(String className, String source) throws IOException {
+				SourceFiles.write(new File(outputDirectory, className + ".java"), source);
+			}
+		});
+	}
+
+	/**
+	 * Same as run(List), for sources which do not have to be on disk.
+	 * 
+	 * @param paths
+	 *            Paths of the java files to obfuscate in the source set.
+	 * @param output
+	 *            Receives the obfuscated classes.
+	 * @param outputFolder
+	 *            Path of the flattened package in the output, e.g. java/xyz.
+	 */
+	public void run(final SourceSet sources, List<String> paths, final SourceSet output, final String outputFolder)
+			throws IOException, ParseException {
+		final String[] pathArray = paths.toArray(new String[paths.size()]);
+		run(pathArray.length, new Sources() {
+			@Override
+			public String getFileName(int i) {
+				return pathArray[i].substring(pathArray[i].lastIndexOf('/') + 1);
+			}
+
+			@Override
+			public String read(int i) throws IOException {
+				String source = sources.get(pathArray[i]);
+				if (source == null) {
+					throw new IOException("No source for " + pathArray[i]);
+				}
+				return source;
+			}
+
+			@Override
+			public void write(String className, String source) {
+				output.put(outputFolder + "/" + className + ".java", source);
+			}
+		});
+	}
+
+	private void run(int count, final Sources sources) throws IOException, ParseException {
+		final CompilationUnit[] compilationUnits = new CompilationUnit[count];
+		final String[] classNames = new String[count];
+		final SymbolIndex index = symbolIndex != null ? symbolIndex : new SymbolIndex();
+		index.addManifest(PackageFlattener.packageRoot, ClassRenamer.getComponentNames());
+		if (plan == null) {
+			plan = new ObfuscationPlan(PackageFlattener.packageRoot, ClassRenamer.getComponentNames(), FLAT_PACKAGE);
+		}
+		final ObfuscationPlan filePlan = plan;
+		plan.setStringMode(stringTable != null ? StringMode.TABLE : stringHolders ? StringMode.HOLDER : StringMode.INLINE);
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			// Argument obfuscation needs the methods of the whole project, and
+			// the string table all of its literals, before any file can be
+			// changed, so every file is parsed and indexed up front.
+			invoke(pool, new FileTask(0, count, new FileAction() {
+				@Override
+				public void process(int i) throws IOException, ParseException {
+					compilationUnits[i] = parse(sources, i);
+					RunReport.Timer timer = report.start(RunReport.INDEX);
+					index.add(compilationUnits[i]);
+					timer.stop().addFiles(1);
+					timer = report.start(RunReport.PLAN);
+					classNames[i] = filePlan.addFile(compilationUnits[i], sources.getFileName(i));
+					timer.stop().addFiles(1);
+				}
+			}));
+			if (stringTable != null) {
+				plan.numberLiterals(stringTable);
+			}
+
+			ArgumentCarriers carriers = this.carriers;
+			if (obfuscateArguments && carriers == null) {
+				carriers = new ArgumentCarriers(
+						methodNamesToModify != null ? methodNamesToModify : index.getMethodsToModify(),
+						index.getMethodSignatures());
+			}
+			plan.setPackages(index.getPackages());
+			plan.setCarriers(carriers);
+			plan.addGeneratedClass("GlobalList");
+			plan.addGeneratedClass("StringDecoder");
+			if (stringTable != null) {
+				plan.addGeneratedClass("StringTable");
+			}
+
+			if (mappingFile != null) {
+				plan.writeMapping(mappingFile);
+			}
+			if (planOnly) {
+				return;
+			}
+			plan.checkValid();
+
+			// Every file is written from the plan
+			final ArgumentCarriers argumentCarriers = plan.getCarriers();
+			final Set<String> packages = plan.getPackages();
+			final Map<String, String> components = plan.getComponents();
+			invoke(pool, new FileTask(0, count, new FileAction() {
+				@Override
+				public void process(int i) throws IOException, ParseException {
+					CompilationUnit cu = compilationUnits[i];
+					compilationUnits[i] = null;
+					String className = filePlan.getOutputClassName(classNames[i]);
+					String source = transform(cu, filePlan.getLiterals(classNames[i]), packages, components,
+							argumentCarriers);
+
+					RunReport.Timer timer = report.start(RunReport.WRITE);
+					sources.write(className, source);
+					PassMetrics metrics = timer.stop();
+					metrics.addFiles(1);
+					metrics.addBytesWritten(PassMetrics.utf8Length(source));
+				}
+			}));
+
+			// Every carrier of the project, also those of files not passed in
+			if (argumentCarriers != null) {
+				for (String carrier : argumentCarriers.getClassNames()) {
+					RunReport.Timer timer = report.start(RunReport.WRITE);
+					String source = ArgumentCarriers.toSource(FLAT_PACKAGE, carrier);
+					sources.write(carrier, source);
+					PassMetrics metrics = timer.stop();
+					metrics.addFiles(1);
+					metrics.addBytesWritten(PassMetrics.utf8Length(source));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	// Reads and parses the file at an index, counted in the parse pass.
+	private CompilationUnit parse(Sources sources, int i) throws IOException, ParseException {
+		RunReport.Timer timer = report.start(RunReport.PARSE);
+		String source = sources.read(i);
+		CompilationUnit cu = parse(source);
+		PassMetrics metrics = timer.stop();
+		metrics.addFiles(1);
+		metrics.addBytesRead(PassMetrics.utf8Length(source));
+		return cu;
+	}
+
+	// Parses a source file read as UTF-8.
+	static CompilationUnit parse(File f) throws IOException, ParseException {
+		return parse(SourceFiles.read(f));
+	}
+
+	static CompilationUnit parse(String source) throws ParseException {
+		return JavaParser.parse(new StringReader(source), true);
+	}
+
+	// Runs a task on the pool and rethrows the first failure of any file.
+	private static void invoke(ForkJoinPool pool, FileTask task) throws IOException, ParseException {
+		try {
+			pool.invoke(task);
+		} catch (FileFailedException e) {
+			if (e.getCause() instanceof ParseException) {
+				throw (ParseException) e.getCause();
+			}
+			throw (IOException) e.getCause();
+		}
+	}
+
+	/**
+	 * Applies the passes to a parsed file in order: arguments, strings, class
+	 * names, packages, then the try-catch rewrite of the ifs.
+	 *
+	 * @param literals
+	 *            Literals of the file to encrypt, as planned.
+	 * @param packages
+	 *            Every package of the project.
+	 * @param components
+	 *            Fully declared component names to their obfuscated names.
+	 * @param carriers
+	 *            Carriers of the methods to hide the arguments of, or null to
+	 *            skip the pass.
+	 * @return the obfuscated source
+	 */
+	public String transform(CompilationUnit cu, List<ObfuscationPlan.LiteralPlan> literals, Set<String> packages,
+			Map<String, String> components, ArgumentCarriers carriers) {
+		RunReport.Timer timer;
+		if (carriers != null) {
+			timer = report.start(RunReport.ARGUMENTS);
+			int hidden = ArgumentObfuscator.obfuscateArguments(cu, carriers);
+			count(timer, 0, hidden);
+		}
+
+		timer = report.start(RunReport.STRINGS);
+		StringEncryptionVisitor strings = new StringEncryptionVisitor(keyString, literals);
+		cu.accept(strings, null);
+		addImport(cu, FLAT_PACKAGE + ".StringDecoder");
+		count(timer, strings.getEncryptedCount(), 0);
+
+		timer = report.start(RunReport.CLASSES);
+		ClassRenameVisitor classes = new ClassRenameVisitor(components);
+		cu.accept(classes, null);
+		count(timer, 0, classes.getRenamedCount());
+
+		timer = report.start(RunReport.PACKAGES);
+		PackageFlattenVisitor packageFlattener = new PackageFlattenVisitor(packages, FLAT_PACKAGE);
+		cu.accept(packageFlattener, null);
+		count(timer, 0, packageFlattener.getRenamedCount());
+
+		timer = report.start(RunReport.TRY_CATCH);
+		TryCatchVisitor tryCatch = new TryCatchVisitor();
+		cu.accept(tryCatch, null);
+		count(timer, 0, 0).addIfs(tryCatch.getRewrittenCount());
+
+		// Printing is counted as part of writing the file
+		timer = report.start(RunReport.WRITE);
+		String source = cu.toString();
+		timer.stop();
+		return source;
+	}
+
+	// Stops the timer of a pass which has just been applied to one file.
+	private static PassMetrics count(RunReport.Timer timer, int literals, int identifiers) {
+		PassMetrics metrics = timer.stop();
+		metrics.addFiles(1);
+		metrics.addLiterals(literals);
+		metrics.addIdentifiers(identifiers);
+		return metrics;
+	}
+
+	// Where the file at an index of the file list is read from and its
+	// output written to.
+	private interface Sources {
+		String getFileName(int i);
+
+		String read(int i) throws IOException;
+
+		void write(String className, String source) throws IOException;
+	}
+
+	// Work done for the file at an index of the file list.
+	private interface FileAction {
+		void process(int i) throws IOException, ParseException;
+	}
+
+	/**
+	 * Splits a range of files in half until a single file is left, which is
+	 * then processed on the current worker.
+	 */
+	private static class FileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final FileAction action;
+
+		FileTask(int from, int to, FileAction action) {
+			this.from = from;
+			this.to = to;
+			this.action = action;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new FileTask(from, middle, action), new FileTask(middle, to, action));
+			} else if (to > from) {
+				try {
+					action.process(from);
+				} catch (IOException e) {
+					throw new FileFailedException(e);
+				} catch (ParseException e) {
+					throw new FileFailedException(e);
+				}
+			}
+		}
+	}
+
+	// Carries a checked exception out of the fork/join pool.
+	private static class FileFailedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		FileFailedException(Exception cause) {
+			super(cause);
+		}
+	}
+
+	private static void addImport(CompilationUnit cu, String name) {
+		List<ImportDeclaration> imports = cu.getImports();
+		if (imports == null) {
+			imports = new ArrayList<ImportDeclaration>();
+			cu.setImports(imports);
+		}
+		for (ImportDeclaration imp : imports) {
+			if (imp.getName().toString().equals(name)) {
+				return;
+			}
+		}
+		imports.add(0, new ImportDeclaration(ASTHelper.createNameExpr(name), false, false));
+	}
+}
@@ -0,0 +1,417 @@
+package encryptorPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import ArgumentObfuscator.ArgumentCarriers;
+import ArgumentObfuscator.ArgumentObfuscator;
+import classPackageObfuscate.SourceFiles;
+
+/**
+ * Everything a run does to the java files, decided before any of them is
+ * changed: the class each file becomes in the flat package, the packages
+ * flattened, each literal encrypted and how, and the carriers the arguments
+ * of each method are hidden in. The pipeline makes it once every
+ * file is parsed and indexed, then writes each file from it.
+ *
+ * It is written as mapping.txt in the format of ProGuard's mapping files, so
+ * tools which read those can map the classes back. The rest of the plan is
+ * given as comments, which such tools skip:
+ *
+ * <pre>
+ * # com.example -> xyz
+ * # com.example.data -> xyz
+ * com.example.MainActivity -> xyz.k3f9a2:
+ *     # 2 string literals encrypted
+ *     # string literal at 12:24 -> StringDecoder.get(7)
+ *     # string literal at 15:18 -> StringDecoder.get(3)
+ *     # void show(String,int) -> show(xyz.AgLI)
+ * com.example.data.Task -> xyz.Task:
+ * </pre>
+ *
+ * Files can be added from several threads at once.
+ */
+public class ObfuscationPlan {
+
+	// Name of the mapping written into the output project
+	public static final String FILE_NAME = "mapping.txt";
+
+	private static final String INDENT = "    ";
+
+	/**
+	 * A string literal to encrypt, found by where it starts in the original
+	 * file, and how its call site reads it.
+	 */
+	public static class LiteralPlan {
+		private final int line;
+		private final int column;
+		private final String value;
+		private final StringMode mode;
+		private final String holderField;
+		private int index = -1;
+
+		/**
+		 * @param value
+		 *            The literal as the app sees it, escapes turned into
+		 *            characters.
+		 * @param mode
+		 *            INLINE, TABLE or HOLDER.
+		 * @param holderField
+		 *            Field of the holder class which holds it, for HOLDER.
+		 */
+		public LiteralPlan(int line, int column, String value, StringMode mode, String holderField) {
+			this.line = line;
+			this.column = column;
+			this.value = value;
+			this.mode = mode;
+			this.holderField = holderField;
+		}
+
+		public int getLine() {
+			return line;
+		}
+
+		public int getColumn() {
+			return column;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public StringMode getMode() {
+			return mode;
+		}
+
+		public String getHolderField() {
+			return holderField;
+		}
+
+		/** Index in the string table, for TABLE once the table is numbered */
+		public int getIndex() {
+			return index;
+		}
+
+		// What the call site becomes.
+		private String describe() {
+			if (mode == StringMode.TABLE) {
+				return "StringDecoder.get(" + index + ")";
+			} else if (mode == StringMode.HOLDER) {
+				return "$S." + holderField;
+			}
+			return "StringDecoder.decrypt(...)";
+		}
+	}
+
+	// What is planned for one class
+	private static class ClassPlan {
+		final String outputName;
+		// null for a class whose file was not parsed in this run
+		final List<LiteralPlan> literals;
+		final List<MethodPlan> methods;
+
+		ClassPlan(String outputName, List<LiteralPlan> literals, List<MethodPlan> methods) {
+			this.outputName = outputName;
+			this.literals = literals;
+			this.methods = methods;
+		}
+	}
+
+	// A declaration whose arguments may be hidden, e.g. void f(String,int)
+	private static class MethodPlan {
+		final String description;
+		final String name;
+		final int parameterCount;
+
+		MethodPlan(String description, String name, int parameterCount) {
+			this.description = description;
+			this.name = name;
+			this.parameterCount = parameterCount;
+		}
+	}
+
+	private final String rootPackage;
+	private final Map<String, String> components;
+	private final String flatPackage;
+	private final Map<String, ClassPlan> classes = new TreeMap<String, ClassPlan>();
+	private final Set<String> packages = new TreeSet<String>();
+	private final Set<String> generatedClasses = new TreeSet<String>();
+	private ArgumentCarriers carriers = null;
+	private StringMode stringMode = StringMode.INLINE;
+
+	/**
+	 * @param rootPackage
+	 *            Package of the manifest.
+	 * @param components
+	 *            Fully declared component names to their obfuscated names.
+	 * @param flatPackage
+	 *            Package every class is moved into.
+	 */
+	public ObfuscationPlan(String rootPackage, Map<String, String> components, String flatPackage) {
+		this.rootPackage = rootPackage;
+		this.components = new HashMap<String, String>(components);
+		this.flatPackage = flatPackage;
+	}
+
+	/** Sets how the literals of the files added from now on are encrypted */
+	public synchronized void setStringMode(StringMode stringMode) {
+		this.stringMode = stringMode;
+	}
+
+	/**
+	 * Plans a parsed file.
+	 *
+	 * @param fileName
+	 *            Name of the file, e.g. Main.java.
+	 * @return the fully declared name of its class
+	 */
+	public String addFile(CompilationUnit cu, String fileName) {
+		String pkg = cu.getPackage() != null ? cu.getPackage().getName().toString() : "";
+		String className = fileName.substring(0, fileName.lastIndexOf("."));
+		String declaredName = pkg.isEmpty() ? className : pkg + "." + className;
+
+		MethodCollector methods = new MethodCollector();
+		cu.accept(methods, null);
+		StringMode mode;
+		synchronized (this) {
+			mode = stringMode;
+		}
+		ClassPlan plan = new ClassPlan(getOutputName(declaredName), StringEncryptionVisitor.planLiterals(cu, mode),
+				methods.methods);
+		synchronized (this) {
+			classes.put(declaredName, plan);
+		}
+		return declaredName;
+	}
+
+	/**
+	 * Adds a class whose file is not obfuscated again, e.g. in an incremental
+	 * run, which keeps the output of the earlier run.
+	 *
+	 * @param outputName
+	 *            Simple name of the class in the flat package.
+	 */
+	public synchronized void addClass(String declaredName, String outputName) {
+		classes.put(declaredName, new ClassPlan(outputName, null, Collections.<MethodPlan> emptyList()));
+	}
+
+	/**
+	 * Adds the literals planned for a table to it, numbers the table and
+	 * gives each of those literals its index.
+	 */
+	public synchronized void numberLiterals(StringTableBuilder stringTable) {
+		for (ClassPlan plan : classes.values()) {
+			if (plan.literals != null) {
+				for (LiteralPlan literal : plan.literals) {
+					if (literal.mode == StringMode.TABLE) {
+						stringTable.add(literal.value);
+					}
+				}
+			}
+		}
+		stringTable.freeze();
+		for (ClassPlan plan : classes.values()) {
+			if (plan.literals != null) {
+				for (LiteralPlan literal : plan.literals) {
+					if (literal.mode == StringMode.TABLE) {
+						literal.index = stringTable.indexOf(literal.value);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the literals planned for a class, empty if it is not part of
+	 *         the plan
+	 */
+	public synchronized List<LiteralPlan> getLiterals(String declaredName) {
+		ClassPlan plan = classes.get(declaredName);
+		return plan != null && plan.literals != null ? plan.literals : Collections.<LiteralPlan> emptyList();
+	}
+
+	/** Sets the packages which are flattened */
+	public synchronized void setPackages(Collection<String> packageNames) {
+		packages.clear();
+		packages.addAll(packageNames);
+	}
+
+	/** Sets the carriers of the run, or null when arguments are not hidden */
+	public synchronized void setCarriers(ArgumentCarriers carriers) {
+		this.carriers = carriers;
+	}
+
+	/** Adds a class the run writes into the flat package itself */
+	public synchronized void addGeneratedClass(String simpleName) {
+		generatedClasses.add(simpleName);
+	}
+
+	public synchronized Set<String> getPackages() {
+		return new TreeSet<String>(packages);
+	}
+
+	public Map<String, String> getComponents() {
+		return Collections.unmodifiableMap(components);
+	}
+
+	public synchronized ArgumentCarriers getCarriers() {
+		return carriers;
+	}
+
+	/**
+	 * @return the simple name a class has in the flat package, or null if it
+	 *         is not part of the plan
+	 */
+	public synchronized String getOutputClassName(String declaredName) {
+		ClassPlan plan = classes.get(declaredName);
+		return plan != null ? plan.outputName : null;
+	}
+
+	/** Fully declared names of the classes planned, sorted */
+	public synchronized Set<String> getClassNames() {
+		return new TreeSet<String>(classes.keySet());
+	}
+
+	/**
+	 * Finds what would make the output wrong: classes of different packages
+	 * which end up with the same name in the flat package, one overwriting
+	 * the other, or a class named like one the run generates.
+	 *
+	 * @return a description of each problem, empty if there are none
+	 */
+	public synchronized List<String> validate() {
+		List<String> problems = new ArrayList<String>();
+		Map<String, String> byOutput = new HashMap<String, String>();
+		Set<String> generated = getGeneratedClasses();
+		for (Map.Entry<String, ClassPlan> entry : classes.entrySet()) {
+			String outputName = entry.getValue().outputName;
+			String other = byOutput.put(outputName, entry.getKey());
+			if (other != null) {
+				problems.add(other + " and " + entry.getKey() + " both become " + flatPackage + "." + outputName);
+			}
+			if (generated.contains(outputName)) {
+				problems.add(entry.getKey() + " becomes " + flatPackage + "." + outputName
+						+ ", which is generated by the run");
+			}
+		}
+		return problems;
+	}
+
+	/**
+	 * @throws IOException
+	 *             if validate finds any problem
+	 */
+	public void checkValid() throws IOException {
+		List<String> problems = validate();
+		if (!problems.isEmpty()) {
+			throw new IOException("The obfuscation plan is not valid: " + problems.get(0)
+					+ (problems.size() > 1 ? " and " + (problems.size() - 1) + " more problems" : ""));
+		}
+	}
+
+	/** The plan as the text of mapping.txt */
+	public synchronized String toMapping() {
+		StringBuilder sb = new StringBuilder();
+		for (String problem : validate()) {
+			sb.append("# PROBLEM ").append(problem).append('\n');
+		}
+		Set<String> flattened = new TreeSet<String>(packages);
+		if (!rootPackage.isEmpty()) {
+			flattened.add(rootPackage);
+		}
+		for (String pkg : flattened) {
+			sb.append("# ").append(pkg).append(" -> ").append(flatPackage).append('\n');
+		}
+		for (String generated : getGeneratedClasses()) {
+			sb.append("# generated ").append(flatPackage).append('.').append(generated).append('\n');
+		}
+
+		for (Map.Entry<String, ClassPlan> entry : classes.entrySet()) {
+			ClassPlan plan = entry.getValue();
+			sb.append(entry.getKey()).append(" -> ").append(flatPackage).append('.').append(plan.outputName)
+					.append(":\n");
+			if (plan.literals == null) {
+				sb.append(INDENT).append("# kept from an earlier run\n");
+				continue;
+			}
+			if (!plan.literals.isEmpty()) {
+				sb.append(INDENT).append("# ").append(plan.literals.size()).append(" string literals encrypted\n");
+			}
+			for (LiteralPlan literal : plan.literals) {
+				sb.append(INDENT).append("# string literal at ").append(literal.line).append(':')
+						.append(literal.column).append(" -> ").append(literal.describe()).append('\n');
+			}
+			for (MethodPlan method : plan.methods) {
+				String carrier = carriers != null ? carriers.getCarrier(method.name, method.parameterCount) : null;
+				if (carrier != null) {
+					sb.append(INDENT).append("# ").append(method.description).append(" -> ").append(method.name)
+							.append('(').append(flatPackage).append('.').append(carrier).append(")\n");
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/** Writes the plan as a mapping file */
+	public void writeMapping(File file) throws IOException {
+		SourceFiles.write(file, toMapping());
+	}
+
+	// Generated classes, with the carriers of the run.
+	private Set<String> getGeneratedClasses() {
+		Set<String> generated = new TreeSet<String>(generatedClasses);
+		if (carriers != null) {
+			generated.addAll(carriers.getClassNames());
+		}
+		return generated;
+	}
+
+	// A component keeps the obfuscated name ClassRenamer picked for it.
+	private String getOutputName(String declaredName) {
+		String obfuscatedName = components.get(declaredName);
+		String name = obfuscatedName != null ? obfuscatedName : declaredName;
+		return name.substring(name.lastIndexOf(".") + 1);
+	}
+
+	// Declarations whose arguments ArgumentObfuscator may hide, by the same
+	// rules as SymbolIndex.
+	private static class MethodCollector extends VoidVisitorAdapter<Object> {
+		private final List<MethodPlan> methods = new ArrayList<MethodPlan>();
+		private int methodDepth = 0;
+
+		@Override
+		public void visit(MethodDeclaration n, Object arg) {
+			if (methodDepth == 0 && !n.getParameters().isEmpty() && !ArgumentObfuscator.isOverride(n)) {
+				StringBuilder sb = new StringBuilder(n.getType().toString()).append(' ').append(n.getName())
+						.append('(');
+				for (Parameter p : n.getParameters()) {
+					if (sb.charAt(sb.length() - 1) != '(') {
+						sb.append(',');
+					}
+					sb.append(p.getType());
+					if (p.isVarArgs()) {
+						sb.append("...");
+					}
+				}
+				methods.add(new MethodPlan(sb.append(')').toString(), n.getName(), n.getParameters().size()));
+			}
+			methodDepth++;
+			super.visit(n, arg);
+			methodDepth--;
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package encryptorPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Command line front end of the tool, for build machines without a display.
+ * Any number of projects can be obfuscated in one run, which saves starting
+ * and warming up a JVM for each of them.
+ *
+ * <pre>
+ * java encryptorPackage.ObfuscatorCLI [options] &lt;input&gt; &lt;output&gt; [&lt;input&gt; &lt;output&gt; ...]
+ * java encryptorPackage.ObfuscatorCLI [options] --batch &lt;file&gt;
+ * java encryptorPackage.ObfuscatorCLI [options] --watch &lt;input&gt; &lt;output&gt;
+ * </pre>
+ *
+ * A batch file has one project per line, its input and output folders
+ * separated by a tab. Empty lines and lines starting with # are skipped.
+ *
+ * Progress is printed to standard output as tab separated lines:
+ *
+ * <pre>
+ * START    &lt;project&gt;/&lt;projects&gt;  &lt;input&gt;  &lt;output&gt;
+ * CHANGED  &lt;project&gt;/&lt;projects&gt;  &lt;file&gt;
+ * STAGE    &lt;project&gt;/&lt;projects&gt;  copy|rename|obfuscate|proguard, or rename|plan for a dry run
+ * STATS    &lt;project&gt;/&lt;projects&gt;  &lt;stage&gt;  &lt;summary of the run so far&gt;
+ * PASS     &lt;project&gt;/&lt;projects&gt;  &lt;pass&gt;  &lt;thread ms&gt;  &lt;cpu ms&gt;  &lt;files&gt;  &lt;bytes read&gt;  &lt;bytes written&gt;  &lt;literals&gt;  &lt;ifs&gt;  &lt;identifiers&gt;
+ * DONE     &lt;project&gt;/&lt;projects&gt;  &lt;milliseconds&gt;
+ * FAILED   &lt;project&gt;/&lt;projects&gt;  &lt;error&gt;
+ * SUMMARY  &lt;succeeded&gt;  &lt;failed&gt;
+ * </pre>
+ *
+ * With --arguments the arguments of the app's own methods are also hidden,
+ * in carrier classes written into the xyz package. This is done on the parsed
+ * sources along with the other passes, so there is no separate argument pass
+ * to run over the output.
+ *
+ * The PASS lines are also written as JSON to obfuscation-report.json in the
+ * output project, or to the file given with --report. The mapping of the old
+ * names to the new is written to mapping.txt, or to the file given with
+ * --mapping. --report and --mapping only take a single project, as each
+ * project would overwrite the file of the one before. With --dry-run only the mapping and the report are written, and
+ * a project fails if its plan is not valid.
+ *
+ * With --watch the project is obfuscated, then obfuscated again as an
+ * incremental run each time a file under app/src/main changes, until the
+ * process is stopped. Each run prints its START and DONE or FAILED lines,
+ * the files which changed given as CHANGED lines.
+ */
+public class ObfuscatorCLI {
+
+	// Exit codes
+	public static final int EXIT_OK = 0;
+	public static final int EXIT_FAILED = 1;
+	public static final int EXIT_USAGE = 2;
+
+	private static final String USAGE = "Usage: ObfuscatorCLI [--arguments] [--incremental] [--threads <n>] [--fail-fast]"
+			+ " [--skip-build] [--link-assets] [--report <file>] [--mapping <file>] [--dry-run]"
+			+ " [--strings inline|table|compressed-table|holder]"
+			+ " (<input> <output>)... | --batch <file> | --watch <input> <output>";
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	/**
+	 * Obfuscates the projects given on the command line.
+	 *
+	 * @return the exit code
+	 */
+	public static int run(String[] args) {
+		return run(args, null, System.out, System.err);
+	}
+
+	/**
+	 * Obfuscates the projects given on a command line, e.g. one sent to
+	 * ObfuscationDaemon.
+	 *
+	 * @param baseDir
+	 *            Folder relative paths are resolved against, or null for the
+	 *            working folder.
+	 * @param out
+	 *            Stream the progress lines are printed to.
+	 * @param err
+	 *            Stream errors are printed to.
+	 * @return the exit code
+	 */
+	public static int run(String[] args, File baseDir, PrintStream out, PrintStream err) {
+		ObfuscationOptions options = new ObfuscationOptions();
+		boolean failFast = false;
+		boolean watch = false;
+		List<File[]> projects = new ArrayList<File[]>();
+		List<String> paths = new ArrayList<String>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("--arguments")) {
+					options.setObfuscateArguments(true);
+				} else if (args[i].equals("--incremental")) {
+					options.setIncremental(true);
+				} else if (args[i].equals("--fail-fast")) {
+					failFast = true;
+				} else if (args[i].equals("--skip-build")) {
+					options.setSkipBuildOutputs(true);
+				} else if (args[i].equals("--link-assets")) {
+					options.setLinkAssets(true);
+				} else if (args[i].equals("--report") && i + 1 < args.length) {
+					options.setReportFile(resolve(baseDir, args[++i]));
+				} else if (args[i].equals("--mapping") && i + 1 < args.length) {
+					options.setMappingFile(resolve(baseDir, args[++i]));
+				} else if (args[i].equals("--dry-run")) {
+					options.setDryRun(true);
+				} else if (args[i].equals("--watch")) {
+					watch = true;
+				} else if (args[i].equals("--threads") && i + 1 < args.length) {
+					options.setParallelism(Integer.parseInt(args[++i]));
+				} else if (args[i].equals("--strings") && i + 1 < args.length) {
+					options.setStringMode(StringMode.fromOptionName(args[++i]));
+				} else if (args[i].equals("--batch") && i + 1 < args.length) {
+					projects.addAll(readBatchFile(baseDir, resolve(baseDir, args[++i])));
+				} else if (args[i].startsWith("--")) {
+					return usage(err, "Unknown option " + args[i]);
+				} else {
+					paths.add(args[i]);
+				}
+			}
+		} catch (NumberFormatException e) {
+			return usage(err, "Thread count is not a number");
+		} catch (IllegalArgumentException e) {
+			return usage(err, e.getMessage());
+		} catch (IOException e) {
+			return usage(err, "Cannot read batch file: " + e.getMessage());
+		}
+
+		if (paths.size() % 2 != 0) {
+			return usage(err, "Every input folder needs an output folder");
+		}
+		for (int i = 0; i < paths.size(); i += 2) {
+			projects.add(new File[] { resolve(baseDir, paths.get(i)), resolve(baseDir, paths.get(i + 1)) });
+		}
+		if (projects.isEmpty()) {
+			return usage(err, "No projects given");
+		}
+		if (projects.size() > 1 && (options.getReportFile() != null || options.getMappingFile() != null)) {
+			// Each project would overwrite the file of the one before
+			return usage(err, "--report and --mapping take one project");
+		}
+		if (watch && (projects.size() != 1 || options.isDryRun())) {
+			return usage(err, "--watch takes one project and no --dry-run");
+		}
+		if (watch) {
+			return watch(projects.get(0)[0], projects.get(0)[1], options, out, err);
+		}
+
+		int succeeded = 0;
+		int failed = 0;
+		for (int i = 0; i < projects.size(); i++) {
+			final String project = (i + 1) + "/" + projects.size();
+			File srcDir = projects.get(i)[0];
+			File destDir = projects.get(i)[1];
+			print(out, "START", project, srcDir.getAbsolutePath(), destDir.getAbsolutePath());
+
+			long start = System.currentTimeMillis();
+			try {
+				if (!new File(srcDir, "app/src/main/AndroidManifest.xml").isFile()) {
+					throw new IOException("Not an Android project: " + srcDir.getAbsolutePath());
+				}
+				ObfuscationCoordinator.ObfuscateProject(srcDir, destDir, options, createListener(project, out));
+				print(out, "DONE", project, String.valueOf(System.currentTimeMillis() - start));
+				succeeded++;
+			} catch (Exception e) {
+				print(out, "FAILED", project, String.valueOf(e));
+				e.printStackTrace(err);
+				failed++;
+				if (failFast) {
+					break;
+				}
+			}
+		}
+
+		print(out, "SUMMARY", String.valueOf(succeeded), String.valueOf(failed));
+		return failed == 0 ? EXIT_OK : EXIT_FAILED;
+	}
+
+	// Obfuscates a project each time it changes, until the process is
+	// stopped.
+	private static int watch(final File srcDir, final File destDir, ObfuscationOptions options,
+			final PrintStream out, final PrintStream err) {
+		final String project = "1/1";
+		if (!new File(srcDir, "app/src/main/AndroidManifest.xml").isFile()) {
+			print(out, "FAILED", project, "Not an Android project: " + srcDir.getAbsolutePath());
+			return EXIT_FAILED;
+		}
+
+		final ProgressListener progress = createListener(project, out);
+		ProjectWatcher watcher = null;
+		try {
+			watcher = new ProjectWatcher(srcDir, destDir, options);
+			watcher.watch(new ProjectWatcher.WatchListener() {
+				private long start;
+
+				@Override
+				public void runStarted(Collection<File> changed) {
+					start = System.currentTimeMillis();
+					print(out, "START", project, srcDir.getAbsolutePath(), destDir.getAbsolutePath());
+					for (File f : changed) {
+						print(out, "CHANGED", project, f.getAbsolutePath());
+					}
+				}
+
+				@Override
+				public void runFinished(Exception failure) {
+					if (failure == null) {
+						print(out, "DONE", project, String.valueOf(System.currentTimeMillis() - start));
+					} else {
+						print(out, "FAILED", project, String.valueOf(failure));
+						failure.printStackTrace(err);
+					}
+				}
+
+				@Override
+				public void stageStarted(String stage) {
+					progress.stageStarted(stage);
+				}
+
+				@Override
+				public void stageFinished(String stage, RunReport report) {
+					progress.stageFinished(stage, report);
+				}
+			});
+		} catch (IOException e) {
+			print(out, "FAILED", project, String.valueOf(e));
+			e.printStackTrace(err);
+			return EXIT_FAILED;
+		} finally {
+			IOUtils.closeQuietly(watcher);
+		}
+		return EXIT_OK;
+	}
+
+	// Prints the stages of a project and the passes of its report.
+	private static ProgressListener createListener(final String project, final PrintStream out) {
+		return new ProgressListener() {
+			@Override
+			public void stageStarted(String stage) {
+				print(out, "STAGE", project, stage);
+			}
+
+			@Override
+			public void stageFinished(String stage, RunReport report) {
+				print(out, "STATS", project, stage, report.getSummary());
+				if (stage.equals(ProgressListener.PROGUARD) || stage.equals(ProgressListener.PLAN)) {
+					for (PassMetrics pass : report.getPasses()) {
+						print(out, "PASS", project, pass.getName(), String.valueOf(pass.getThreadNanos() / 1000000),
+								String.valueOf(pass.getCpuNanos() / 1000000), String.valueOf(pass.getFiles()),
+								String.valueOf(pass.getBytesRead()), String.valueOf(pass.getBytesWritten()),
+								String.valueOf(pass.getLiterals()), String.valueOf(pass.getIfs()),
+								String.valueOf(pass.getIdentifiers()));
+					}
+				}
+			}
+		};
+	}
+
+	// Projects listed in a batch file, as input and output folder pairs.
+	private static List<File[]> readBatchFile(File baseDir, File batchFile) throws IOException {
+		List<File[]> projects = new ArrayList<File[]>();
+		for (String line : FileUtils.readLines(batchFile, "UTF-8")) {
+			if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+				continue;
+			}
+			String[] parts = line.split("\t");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Batch line needs <input>\\t<output>: " + line);
+			}
+			projects.add(new File[] { resolve(baseDir, parts[0].trim()), resolve(baseDir, parts[1].trim()) });
+		}
+		return projects;
+	}
+
+	private static File resolve(File baseDir, String path) {
+		File f = new File(path);
+		return baseDir == null || f.isAbsolute() ? f : new File(baseDir, path);
+	}
+
+	private static int usage(PrintStream err, String message) {
+		err.println(message);
+		err.println(USAGE);
+		return EXIT_USAGE;
+	}
+
+	// Prints one tab separated progress line, flushed so that a process
+	// reading the output sees it straight away.
+	private static void print(PrintStream out, String... fields) {
+		StringBuilder sb = new StringBuilder();
+		for (String field : fields) {
+			if (sb.length() > 0) {
+				sb.append('\t');
+			}
+			sb.append(field.replace('\t', ' ').replace('\n', ' '));
+		}
+		out.println(sb.toString());
+		out.flush();
+	}
+}
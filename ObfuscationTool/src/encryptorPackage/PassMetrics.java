@@ -0,0 +1,115 @@
+package encryptorPackage;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What one pass of a run cost and did. Passes which work on each file run on
+ * several threads and add to the same metrics at once, so their thread time
+ * is the time spent in the pass summed over the threads, not the time the run
+ * waited for it. That is in the stages of the RunReport.
+ */
+public class PassMetrics {
+
+	private final String name;
+	private final AtomicLong threadNanos = new AtomicLong();
+	private final AtomicLong cpuNanos = new AtomicLong();
+	private final AtomicLong files = new AtomicLong();
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicLong bytesWritten = new AtomicLong();
+	private final AtomicLong literals = new AtomicLong();
+	private final AtomicLong ifs = new AtomicLong();
+	private final AtomicLong identifiers = new AtomicLong();
+
+	PassMetrics(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void addTime(long threadNanos, long cpuNanos) {
+		this.threadNanos.addAndGet(threadNanos);
+		this.cpuNanos.addAndGet(cpuNanos);
+	}
+
+	public void addFiles(long count) {
+		files.addAndGet(count);
+	}
+
+	public void addBytesRead(long count) {
+		bytesRead.addAndGet(count);
+	}
+
+	public void addBytesWritten(long count) {
+		bytesWritten.addAndGet(count);
+	}
+
+	/** String literals encrypted */
+	public void addLiterals(long count) {
+		literals.addAndGet(count);
+	}
+
+	/** If statements rewritten into try-catch blocks */
+	public void addIfs(long count) {
+		ifs.addAndGet(count);
+	}
+
+	/** Names of classes, packages and arguments changed */
+	public void addIdentifiers(long count) {
+		identifiers.addAndGet(count);
+	}
+
+	/** Time spent in the pass, summed over the threads running it */
+	public long getThreadNanos() {
+		return threadNanos.get();
+	}
+
+	public long getCpuNanos() {
+		return cpuNanos.get();
+	}
+
+	public long getFiles() {
+		return files.get();
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public long getBytesWritten() {
+		return bytesWritten.get();
+	}
+
+	public long getLiterals() {
+		return literals.get();
+	}
+
+	public long getIfs() {
+		return ifs.get();
+	}
+
+	public long getIdentifiers() {
+		return identifiers.get();
+	}
+
+	/** Number of bytes a string takes as UTF-8, without encoding it */
+	public static long utf8Length(String s) {
+		long length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c)) {
+				// The pair is one four byte character
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+}
@@ -1,44 +1,34 @@
 package encryptorPackage;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
+
+import classPackageObfuscate.SourceFiles;
 
 public class ProGuardEnabler {
 
 	public static void setMinifyEnabledToTrue(String filePath) {
 		
 		File f = new File(filePath);
-		FileWriter fw = null;
+		if (!f.isFile()) {
+			// Only the sources were obfuscated, e.g. by the Gradle task, whose
+			// build script is left to the project
+			return;
+		}
 		
 		try {
-			FileReader fr = new FileReader(f);
-			BufferedReader br = new BufferedReader(fr);
-
 			StringBuilder sb = new StringBuilder();
-			String line;
-			while ((line = br.readLine()) != null) {
+			for (String line : SourceFiles.read(f).split("\r?\n", -1)) {
 				if (line.contains("minifyEnabled")) {
 					line = line.replace("false", "true");
 				}
-				sb.append(line + "\n");
+				sb.append(line).append("\n");
 			}
+			// The last line break was already in the file
+			sb.setLength(sb.length() - 1);
 
-			fw = new FileWriter(f, false);
-
-			br.close();
-			fw.write(sb.toString());
-			fw.close();
+			SourceFiles.write(f, sb.toString());
 		} catch (Exception e) {
 			e.printStackTrace();
-		} finally {
-			try {
-				fw.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
 		}
 	}
 }
@@ -0,0 +1,26 @@
+package encryptorPackage;
+
+/**
+ * Told about each stage of obfuscating a project, so the GUI and the command
+ * line can show how far along it is.
+ */
+public interface ProgressListener {
+
+	// Stages of ObfuscationCoordinator.ObfuscateProject, in order
+	String COPY = "copy";
+	String RENAME = "rename";
+	String OBFUSCATE = "obfuscate";
+	String PROGUARD = "proguard";
+
+	// Last stage of a dry run, instead of obfuscate and proguard
+	String PLAN = "plan";
+
+	void stageStarted(String stage);
+
+	/**
+	 * Called when a stage ends, with the metrics of the run so far. Passes
+	 * which work on each file may still be adding to the report of the last
+	 * stage while this runs.
+	 */
+	void stageFinished(String stage, RunReport report);
+}
@@ -0,0 +1,243 @@
+package encryptorPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Copies the files of a project which the obfuscator passes through
+ * unchanged, on several threads. Files are copied with
+ * FileChannel.transferTo, which leaves the copying to the OS instead of
+ * moving every byte through the Java heap.
+ *
+ * With linking, files such as images and jars are hard linked instead when
+ * the file system allows it, which costs nothing however big they are. The
+ * original and the output then share the file, so editing it in place in
+ * either project changes both. Java files, XML and Gradle scripts, which the
+ * obfuscator rewrites, are always copied.
+ */
+public class ProjectCopier {
+
+	// Build output, which the obfuscated project makes again when it is built
+	private static final Set<String> BUILD_DIRECTORIES = new HashSet<String>(Arrays.asList("build", ".gradle"));
+
+	// Files which a pass may rewrite, never linked
+	private static final String[] REWRITTEN_EXTENSIONS = { ".java", ".xml", ".gradle" };
+
+	private final File srcDir;
+	private final File destDir;
+	private final Set<File> excluded = new HashSet<File>();
+	private final Map<File, String> excludedExtensions = new HashMap<File, String>();
+	private boolean skipBuildOutputs = false;
+	private boolean linkFiles = false;
+	private boolean onlyChanged = false;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private RunReport report = new RunReport();
+
+	// Set once a link fails, e.g. across file systems, to stop trying
+	private volatile boolean linkingFailed = false;
+
+	public ProjectCopier(File srcDir, File destDir) {
+		this.srcDir = srcDir.getAbsoluteFile();
+		this.destDir = destDir.getAbsoluteFile();
+	}
+
+	/** Leaves a file or folder of the project out of the copy */
+	public void exclude(File f) {
+		excluded.add(f.getAbsoluteFile());
+	}
+
+	/**
+	 * Leaves the files with an extension out of the copy, in a folder and its
+	 * subfolders, for files which another stage writes.
+	 */
+	public void excludeFiles(File folder, String extension) {
+		excludedExtensions.put(folder.getAbsoluteFile(), extension);
+	}
+
+	/** Leave out build/ and .gradle/ folders */
+	public void setSkipBuildOutputs(boolean skipBuildOutputs) {
+		this.skipBuildOutputs = skipBuildOutputs;
+	}
+
+	/** Hard link files which are not rewritten instead of copying them */
+	public void setLinkFiles(boolean linkFiles) {
+		this.linkFiles = linkFiles;
+	}
+
+	/**
+	 * Only copy files whose size or modification time differs from the copy
+	 * in the output, for incremental runs.
+	 */
+	public void setOnlyChanged(boolean onlyChanged) {
+		this.onlyChanged = onlyChanged;
+	}
+
+	/** Number of files copied at once, defaults to the number of cores */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/** Report the copied files are counted in, under the copy pass */
+	public void setReport(RunReport report) {
+		this.report = report;
+	}
+
+	/**
+	 * Copies the project. The folders are made first, then the files are
+	 * copied in parallel.
+	 *
+	 * @return the number of files copied or linked
+	 */
+	public int copy() throws IOException {
+		List<File[]> files = new ArrayList<File[]>();
+		collect(srcDir, destDir, files);
+
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (final File[] file : files) {
+				results.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						RunReport.Timer timer = report.start(RunReport.COPY);
+						long copied = copyFile(file[0], file[1]);
+						PassMetrics metrics = timer.stop();
+						metrics.addFiles(1);
+						metrics.addBytesRead(copied);
+						metrics.addBytesWritten(copied);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Copy was interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return files.size();
+	}
+
+	// Makes the folders of the copy and lists the files to copy into them.
+	private void collect(File from, File to, List<File[]> files) throws IOException {
+		File[] list = from.listFiles();
+		if (list == null) {
+			throw new IOException("Cannot list " + from);
+		}
+		if (!to.isDirectory() && !to.mkdirs()) {
+			throw new IOException("Cannot make folder " + to);
+		}
+
+		// Keep the order the same on every OS so runs are repeatable
+		Arrays.sort(list);
+
+		for (File f : list) {
+			File copy = new File(to, f.getName());
+			if (excluded.contains(f) || isExcludedFile(f)) {
+				continue;
+			}
+			if (f.isDirectory()) {
+				if (!(skipBuildOutputs && BUILD_DIRECTORIES.contains(f.getName()))) {
+					collect(f, copy, files);
+				}
+			} else if (!(onlyChanged && isUnchanged(f, copy))) {
+				files.add(new File[] { f, copy });
+			}
+		}
+	}
+
+	private boolean isExcludedFile(File f) {
+		for (Map.Entry<File, String> entry : excludedExtensions.entrySet()) {
+			if (f.getName().endsWith(entry.getValue())
+					&& f.getPath().startsWith(entry.getKey().getPath() + File.separator)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isUnchanged(File f, File copy) {
+		return copy.exists() && copy.length() == f.length() && copy.lastModified() == f.lastModified();
+	}
+
+	// Copies or links a file, returning the number of bytes copied.
+	private long copyFile(File from, File to) throws IOException {
+		Path source = from.toPath();
+		Path target = to.toPath();
+
+		// The old copy may be a link to the original, which must not be
+		// written through
+		Files.deleteIfExists(target);
+
+		if (linkFiles && !linkingFailed && !isRewritten(from.getName())) {
+			try {
+				Files.createLink(target, source);
+				return 0;
+			} catch (UnsupportedOperationException e) {
+				linkingFailed = true;
+			} catch (IOException e) {
+				linkingFailed = true;
+			}
+		}
+
+		long size;
+		FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+		try {
+			FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+			try {
+				size = in.size();
+				long position = 0;
+				while (position < size) {
+					long transferred = in.transferTo(position, size - position, out);
+					if (transferred <= 0) {
+						// The file got shorter while it was copied
+						throw new IOException("Cannot copy " + from + ", it changed while being copied");
+					}
+					position += transferred;
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+
+		// Incremental runs compare the modification times
+		to.setLastModified(from.lastModified());
+		return size;
+	}
+
+	private static boolean isRewritten(String name) {
+		for (String extension : REWRITTEN_EXTENSIONS) {
+			if (name.endsWith(extension)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
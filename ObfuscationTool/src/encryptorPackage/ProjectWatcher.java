@@ -0,0 +1,198 @@
+package encryptorPackage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Keeps the output of a project up to date while its sources are edited.
+ * The app/src/main folder of the original project is watched, and once a
+ * burst of changes has settled, e.g. an editor saving several files, the
+ * project is obfuscated again as an incremental run. Only the files which
+ * changed and the files depending on them are redone, in a JVM which is
+ * already warmed up, so the output follows a save within about a second.
+ *
+ * Files deleted from the sources are deleted from the output too. A run which
+ * fails, e.g. on a file saved half way through an edit, is reported and the
+ * watching goes on.
+ */
+public class ProjectWatcher implements Closeable {
+
+	/** Told about each run as well as its stages */
+	public interface WatchListener extends ProgressListener {
+
+		/**
+		 * Called before a run, with the files and folders which changed, or
+		 * none for the first run or when changes were missed.
+		 */
+		void runStarted(Collection<File> changed);
+
+		/** Called after a run, with its failure or null if it succeeded */
+		void runFinished(Exception failure);
+	}
+
+	// Changes come in bursts; a run starts once none came for this long
+	private static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+	// A run starts after this long even if changes keep coming
+	private static final long MAX_WAIT_MILLIS = 5000;
+
+	private final File srcDir;
+	private final File destDir;
+	private final File watchedDir;
+	private final ObfuscationOptions options;
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> folders = new HashMap<WatchKey, Path>();
+	private long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+
+	/**
+	 * @param srcDir
+	 *            Root of the original project.
+	 * @param destDir
+	 *            Root of the obfuscated project.
+	 * @param options
+	 *            Settings of each run, which is always incremental.
+	 */
+	public ProjectWatcher(File srcDir, File destDir, ObfuscationOptions options) throws IOException {
+		this.srcDir = srcDir.getAbsoluteFile();
+		this.destDir = destDir.getAbsoluteFile();
+		this.watchedDir = new File(this.srcDir, "app/src/main");
+		this.options = options;
+		options.setIncremental(true);
+		this.watchService = FileSystems.getDefault().newWatchService();
+	}
+
+	/** How long to wait for more changes before a run starts */
+	public void setDebounceMillis(long debounceMillis) {
+		this.debounceMillis = Math.max(0, debounceMillis);
+	}
+
+	/**
+	 * Obfuscates the project, then again each time its sources change, until
+	 * the thread is interrupted or the watcher is closed.
+	 */
+	public void watch(WatchListener listener) throws IOException {
+		register(watchedDir.toPath());
+		runProject(Collections.<File> emptySet(), listener);
+
+		try {
+			while (true) {
+				Set<File> changed = new TreeSet<File>();
+				boolean overflow = collect(watchService.take(), changed);
+
+				// Wait for the burst to settle
+				long deadline = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+				WatchKey key;
+				while (System.currentTimeMillis() < deadline
+						&& (key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+					overflow |= collect(key, changed);
+				}
+
+				if (changed.isEmpty() && !overflow) {
+					continue;
+				}
+				removeDeletedOutputs(changed);
+				runProject(overflow ? Collections.<File> emptySet() : changed, listener);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// Closed from another thread
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+	private void runProject(Collection<File> changed, WatchListener listener) {
+		listener.runStarted(changed);
+		try {
+			ObfuscationCoordinator.ObfuscateProject(srcDir, destDir, options, listener);
+			listener.runFinished(null);
+		} catch (Exception e) {
+			listener.runFinished(e);
+		}
+	}
+
+	// Adds the files a key saw changing, returning whether it missed some.
+	// New folders are watched as well.
+	private boolean collect(WatchKey key, Set<File> changed) throws IOException {
+		Path folder = folders.get(key);
+		boolean overflow = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || folder == null) {
+				overflow = true;
+				continue;
+			}
+			Path path = folder.resolve((Path) event.context());
+			if (isIgnored(path)) {
+				continue;
+			}
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+				register(path);
+			}
+			changed.add(path.toFile());
+		}
+		if (!key.reset()) {
+			// The folder is gone
+			folders.remove(key);
+		}
+		return overflow;
+	}
+
+	// Watches a folder and the folders below it.
+	private void register(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+						StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+				folders.put(key, dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	// The output of a java file is found through the cache of the run, but
+	// the other files are copied to the same path in the output project.
+	private void removeDeletedOutputs(Set<File> changed) throws IOException {
+		for (File f : changed) {
+			if (f.exists()) {
+				continue;
+			}
+			String relativePath = srcDir.toURI().relativize(f.toURI()).getPath();
+			File output = new File(destDir, relativePath);
+			if (!relativePath.startsWith("app/src/main/java/") && output.exists()) {
+				FileUtils.forceDelete(output);
+			}
+		}
+	}
+
+	// Temporary files editors write next to the file being saved.
+	private static boolean isIgnored(Path path) {
+		String name = path.getFileName().toString();
+		return name.endsWith("~") || name.startsWith(".#") || name.endsWith(".swp") || name.endsWith(".tmp");
+	}
+}
@@ -0,0 +1,130 @@
+package encryptorPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import classPackageObfuscate.XmlRewriter;
+
+/**
+ * Writes the XML files of a res/ folder into the output project with the
+ * classes they refer to renamed, as the java files are, on several threads.
+ * Custom views in layouts, fragments, preference screens and the like then
+ * still find their classes. Each file is streamed, so large resource trees
+ * take no more memory than small ones.
+ *
+ * The output of a file is only written when it changes, so an incremental
+ * run leaves resources which did not change alone.
+ */
+public class ResourceRewriter {
+
+	private static final String EXTENSION = ".xml";
+
+	private final File srcDir;
+	private final File destDir;
+	private final XmlRewriter rewriter;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private RunReport report = new RunReport();
+
+	/**
+	 * @param srcDir
+	 *            res/ folder of the original project.
+	 * @param destDir
+	 *            res/ folder of the output project, which may be the same.
+	 */
+	public ResourceRewriter(File srcDir, File destDir, XmlRewriter rewriter) {
+		this.srcDir = srcDir.getAbsoluteFile();
+		this.destDir = destDir.getAbsoluteFile();
+		this.rewriter = rewriter;
+	}
+
+	/** Number of files rewritten at once, defaults to the number of cores */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/** Report the files are counted in, under the xml pass */
+	public void setReport(RunReport report) {
+		this.report = report;
+	}
+
+	/**
+	 * Rewrites every XML file of the folder. Nothing is done if the project
+	 * has no res/ folder.
+	 *
+	 * @return the number of files written
+	 */
+	public int rewrite() throws IOException {
+		List<File[]> files = new ArrayList<File[]>();
+		if (srcDir.isDirectory()) {
+			collect(srcDir, destDir, files);
+		}
+
+		int written = 0;
+		long renamedBefore = rewriter.getRenamedCount();
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (final File[] file : files) {
+				results.add(pool.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws IOException {
+						RunReport.Timer timer = report.start(RunReport.XML);
+						boolean changed = rewriter.rewrite(file[0], file[1]);
+						PassMetrics metrics = timer.stop();
+						metrics.addFiles(1);
+						metrics.addBytesRead(file[0].length());
+						if (changed) {
+							metrics.addBytesWritten(file[1].length());
+						}
+						return changed;
+					}
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				if (result.get()) {
+					written++;
+				}
+			}
+			report.pass(RunReport.XML).addIdentifiers(rewriter.getRenamedCount() - renamedBefore);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Rewriting resources was interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return written;
+	}
+
+	// Lists the XML files under a folder with the file each is written to.
+	private static void collect(File from, File to, List<File[]> files) throws IOException {
+		File[] list = from.listFiles();
+		if (list == null) {
+			throw new IOException("Cannot list " + from);
+		}
+
+		// Keep the order the same on every OS so runs are repeatable
+		Arrays.sort(list);
+
+		for (File f : list) {
+			if (f.isDirectory()) {
+				collect(f, new File(to, f.getName()), files);
+			} else if (f.getName().endsWith(EXTENSION)) {
+				files.add(new File[] { f, new File(to, f.getName()) });
+			}
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package encryptorPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import classPackageObfuscate.SourceFiles;
+
+/**
+ * Metrics of every pass of a run, and how long each stage took, so it can be
+ * seen which pass to speed up and how its cost grows with the project. The
+ * passes can be added to from several threads at once.
+ *
+ * Written at the end of a run as JSON:
+ *
+ * <pre>
+ * {
+ *   "wallMillis": 1520,
+ *   "stages": { "copy": 210, "rename": 15, "obfuscate": 1280, "proguard": 2 },
+ *   "passes": [
+ *     { "name": "strings", "threadMillis": 310, "cpuMillis": 290, "files": 120, "bytesRead": 0,
+ *       "bytesWritten": 0, "literals": 840, "ifs": 0, "identifiers": 0 },
+ *     ...
+ *   ]
+ * }
+ * </pre>
+ *
+ * The threadMillis and cpuMillis of a pass are summed over the threads which
+ * ran it; the stages and wallMillis give the time the run took.
+ */
+public class RunReport {
+
+	// Name of the report written into the output project
+	public static final String FILE_NAME = "obfuscation-report.json";
+
+	// Names of the passes
+	public static final String COPY = "copy";
+	public static final String MANIFEST = "manifest";
+	public static final String XML = "xml";
+	public static final String DECODER = "decoder";
+	// Java files an incremental run keeps from the earlier run
+	public static final String REUSED = "reused";
+	public static final String PARSE = "parse";
+	public static final String INDEX = "index";
+	public static final String PLAN = "plan";
+	public static final String ARGUMENTS = "arguments";
+	public static final String STRINGS = "strings";
+	public static final String CLASSES = "classes";
+	public static final String PACKAGES = "packages";
+	public static final String TRY_CATCH = "try-catch";
+	public static final String WRITE = "write";
+	public static final String PROGUARD = "proguard";
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final long startNanos = System.nanoTime();
+	private final Map<String, PassMetrics> passes = new LinkedHashMap<String, PassMetrics>();
+	private final Map<String, Long> stageMillis = new LinkedHashMap<String, Long>();
+	private String stage = null;
+	private long stageStartNanos = 0;
+	private long wallNanos = -1;
+
+	/** The metrics of a pass, added the first time it is asked for */
+	public synchronized PassMetrics pass(String name) {
+		PassMetrics metrics = passes.get(name);
+		if (metrics == null) {
+			metrics = new PassMetrics(name);
+			passes.put(name, metrics);
+		}
+		return metrics;
+	}
+
+	/** Passes in the order they first ran */
+	public synchronized List<PassMetrics> getPasses() {
+		return new ArrayList<PassMetrics>(passes.values());
+	}
+
+	/**
+	 * Starts timing a piece of a pass on the current thread. The time is
+	 * added to the pass when the timer is stopped.
+	 */
+	public Timer start(String pass) {
+		return new Timer(pass(pass));
+	}
+
+	/**
+	 * Ends the stage running and starts the next one.
+	 *
+	 * @return the stage which ended, or null if there was none
+	 */
+	public synchronized String startStage(String next) {
+		String ended = stage;
+		long now = System.nanoTime();
+		if (stage != null) {
+			stageMillis.put(stage, (now - stageStartNanos) / 1000000);
+		}
+		stage = next;
+		stageStartNanos = now;
+		return ended;
+	}
+
+	/**
+	 * Ends the last stage and the run.
+	 *
+	 * @return the stage which ended, or null if there was none
+	 */
+	public synchronized String finish() {
+		String ended = startStage(null);
+		wallNanos = System.nanoTime() - startNanos;
+		return ended;
+	}
+
+	/** Time since the run started, or the length of the run once finished */
+	public synchronized long getWallMillis() {
+		return (wallNanos >= 0 ? wallNanos : System.nanoTime() - startNanos) / 1000000;
+	}
+
+	/** One line for a person to read, e.g. in the GUI */
+	public String getSummary() {
+		long bytes = 0;
+		long literals = 0;
+		long ifs = 0;
+		long identifiers = 0;
+		long files = 0;
+		long reused = 0;
+		for (PassMetrics metrics : getPasses()) {
+			if (metrics.getName().equals(PARSE)) {
+				files = metrics.getFiles();
+			} else if (metrics.getName().equals(REUSED)) {
+				reused = metrics.getFiles();
+			}
+			bytes += metrics.getBytesRead();
+			literals += metrics.getLiterals();
+			ifs += metrics.getIfs();
+			identifiers += metrics.getIdentifiers();
+		}
+		return files + " java files" + (reused > 0 ? " (" + reused + " kept)" : "") + ", " + (bytes / 1024) + " KB read, " + literals + " literals, "
+				+ ifs + " ifs, " + identifiers + " identifiers in " + getWallMillis() + " ms";
+	}
+
+	public synchronized String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"wallMillis\": ").append(getWallMillis()).append(",\n");
+		sb.append("  \"stages\": {");
+		String separator = " ";
+		for (Map.Entry<String, Long> entry : stageMillis.entrySet()) {
+			sb.append(separator).append('"').append(entry.getKey()).append("\": ").append(entry.getValue());
+			separator = ", ";
+		}
+		sb.append(" },\n");
+		sb.append("  \"passes\": [");
+		separator = "\n";
+		for (PassMetrics metrics : passes.values()) {
+			sb.append(separator);
+			sb.append("    { \"name\": \"").append(metrics.getName()).append('"');
+			sb.append(", \"threadMillis\": ").append(metrics.getThreadNanos() / 1000000);
+			sb.append(", \"cpuMillis\": ").append(metrics.getCpuNanos() / 1000000);
+			sb.append(", \"files\": ").append(metrics.getFiles());
+			sb.append(", \"bytesRead\": ").append(metrics.getBytesRead());
+			sb.append(", \"bytesWritten\": ").append(metrics.getBytesWritten());
+			sb.append(", \"literals\": ").append(metrics.getLiterals());
+			sb.append(", \"ifs\": ").append(metrics.getIfs());
+			sb.append(", \"identifiers\": ").append(metrics.getIdentifiers());
+			sb.append(" }");
+			separator = ",\n";
+		}
+		sb.append("\n  ]\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	public void write(File f) throws IOException {
+		SourceFiles.write(f, toJson());
+	}
+
+	// CPU time of the current thread, or 0 where the JVM cannot measure it
+	private static long cpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+	}
+
+	/** Time spent in a pass by one thread */
+	public static class Timer {
+		private final PassMetrics metrics;
+		private final long wallStart = System.nanoTime();
+		private final long cpuStart = cpuTime();
+
+		private Timer(PassMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		/** Adds the time since the timer started to its pass */
+		public PassMetrics stop() {
+			metrics.addTime(System.nanoTime() - wallStart, cpuTime() - cpuStart);
+			return metrics;
+		}
+	}
+}
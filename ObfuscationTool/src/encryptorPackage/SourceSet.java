@@ -0,0 +1,111 @@
+package encryptorPackage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import classPackageObfuscate.SourceFiles;
+
+/**
+ * Text files of a project by their path, such as AndroidManifest.xml or
+ * java/com/example/MainActivity.java, with / between the folders on every OS.
+ *
+ * A file is either held in memory or read from disk when it is asked for, so
+ * a project on disk can be used as a source set without loading all of it.
+ * Source sets can be read and added to from several threads at once.
+ */
+public class SourceSet {
+
+	// Text of a file, or the File to read it from
+	private final Map<String, Object> files = new TreeMap<String, Object>();
+
+	public SourceSet() {
+	}
+
+	/** A source set holding a copy of the given text files */
+	public SourceSet(Map<String, String> files) {
+		this.files.putAll(files);
+	}
+
+	/**
+	 * A view of the files in a folder, which are read when they are asked
+	 * for. Later changes to the folder are not seen.
+	 */
+	public static SourceSet fromDirectory(File directory) {
+		SourceSet sources = new SourceSet();
+		sources.addDirectory(directory, "");
+		return sources;
+	}
+
+	private void addDirectory(File directory, String prefix) {
+		File[] list = directory.listFiles();
+		if (list == null) {
+			return;
+		}
+		for (File f : list) {
+			if (f.isDirectory()) {
+				addDirectory(f, prefix + f.getName() + "/");
+			} else {
+				files.put(prefix + f.getName(), f);
+			}
+		}
+	}
+
+	public synchronized void put(String path, String text) {
+		files.put(path, text);
+	}
+
+	public synchronized boolean contains(String path) {
+		return files.containsKey(path);
+	}
+
+	/** Paths of all the files in order */
+	public synchronized List<String> getPaths() {
+		return new ArrayList<String>(files.keySet());
+	}
+
+	/** Paths of the files in a folder and the folders below it */
+	public synchronized List<String> getPaths(String folder) {
+		List<String> paths = new ArrayList<String>();
+		for (String path : files.keySet()) {
+			if (path.startsWith(folder + "/")) {
+				paths.add(path);
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * @return the text of a file, or null if there is no such file
+	 */
+	public String get(String path) throws IOException {
+		Object file;
+		synchronized (this) {
+			file = files.get(path);
+		}
+		if (file instanceof File) {
+			return SourceFiles.read((File) file);
+		}
+		return (String) file;
+	}
+
+	/** The text of every file, read from disk where needed */
+	public Map<String, String> toMap() throws IOException {
+		Map<String, String> map = new LinkedHashMap<String, String>();
+		for (String path : getPaths()) {
+			map.put(path, get(path));
+		}
+		return map;
+	}
+
+	/** Writes every file into a folder, replacing any which are there */
+	public void writeTo(File directory) throws IOException {
+		for (String path : getPaths()) {
+			SourceFiles.write(new File(directory, path), get(path));
+		}
+	}
+}
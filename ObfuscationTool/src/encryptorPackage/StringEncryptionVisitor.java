@@ -0,0 +1,310 @@
+package encryptorPackage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.javaparser.ASTHelper;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.AnnotationDeclaration;
+import com.github.javaparser.ast.body.AnnotationMemberDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.ModifierSet;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.body.VariableDeclaratorId;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.IntegerLiteralExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.expr.NormalAnnotationExpr;
+import com.github.javaparser.ast.expr.SingleMemberAnnotationExpr;
+import com.github.javaparser.ast.expr.StringLiteralExpr;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.SwitchEntryStmt;
+import com.github.javaparser.ast.visitor.ModifierVisitorAdapter;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import encryptorPackage.ObfuscationPlan.LiteralPlan;
+
+/**
+ * Swaps the string literals of a file for a call to the generated
+ * StringDecoder with the encrypted value of the literal, or with its index in
+ * the string table.
+ *
+ * Which literals are replaced, and how, is decided beforehand by
+ * planLiterals and kept in the ObfuscationPlan; the visitor only applies
+ * that plan. Literals which have to stay constant expressions are not
+ * planned: case labels, annotation values and the default values of
+ * annotation methods.
+ *
+ * With holders, each distinct literal of a top level class is decrypted into
+ * a static field of a nested holder class instead, and read from there:
+ *
+ * <pre>
+ * private static final class $S {
+ *     static final String $0 = StringDecoder.decrypt("...");
+ * }
+ * </pre>
+ *
+ * The JVM only initialises the holder the first time one of its fields is
+ * read, so a literal is decrypted at most once per process and never in a
+ * loop, without any locking in the decoder.
+ */
+public class StringEncryptionVisitor extends ModifierVisitorAdapter<Object> {
+
+	// Names of the generated holder class and its fields, $ keeps them apart
+	// from the names in the app
+	private static final String HOLDER_CLASS = "$S";
+	private static final String HOLDER_FIELD_PREFIX = "$";
+
+	private final String keyString;
+
+	// Planned literals of the file, by where they start
+	private final Map<String, LiteralPlan> literals = new HashMap<String, LiteralPlan>();
+
+	// Holder fields of the top level class being visited
+	private Set<String> holderFields = null;
+	private List<FieldDeclaration> holderDeclarations = null;
+
+	private int encryptedCount = 0;
+
+	/**
+	 * @param literals
+	 *            Literals of the file as planned by planLiterals. Any other
+	 *            literal is left as it is.
+	 */
+	public StringEncryptionVisitor(String keyString, List<LiteralPlan> literals) {
+		this.keyString = keyString;
+		for (LiteralPlan literal : literals) {
+			this.literals.put(literal.getLine() + ":" + literal.getColumn(), literal);
+		}
+	}
+
+	@Override
+	public Node visit(CompilationUnit n, Object arg) {
+		if (n.getTypes() == null) {
+			return super.visit(n, arg);
+		}
+
+		// Each top level class gets its own holder, which is added once all of
+		// its literals are known
+		for (TypeDeclaration type : n.getTypes()) {
+			holderFields = new HashSet<String>();
+			holderDeclarations = new ArrayList<FieldDeclaration>();
+			type.accept(this, arg);
+			if (!holderDeclarations.isEmpty()) {
+				addHolder(type);
+			}
+		}
+		holderFields = null;
+		holderDeclarations = null;
+		return n;
+	}
+
+	@Override
+	public Node visit(StringLiteralExpr n, Object arg) {
+		LiteralPlan literal = literals.get(n.getBeginLine() + ":" + n.getBeginColumn());
+		if (literal == null) {
+			return n;
+		}
+		encryptedCount++;
+
+		List<Expression> args = new ArrayList<Expression>();
+		if (literal.getMode() == StringMode.TABLE) {
+			args.add(new IntegerLiteralExpr(String.valueOf(literal.getIndex())));
+			return new MethodCallExpr(new NameExpr("StringDecoder"), "get", args);
+		}
+		args.add(new StringLiteralExpr(StringReplacer.encrypt(literal.getValue(), keyString)));
+		MethodCallExpr decrypt = new MethodCallExpr(new NameExpr("StringDecoder"), "decrypt", args);
+		if (literal.getMode() != StringMode.HOLDER) {
+			return decrypt;
+		}
+
+		String field = literal.getHolderField();
+		if (holderFields.add(field)) {
+			holderDeclarations.add(new FieldDeclaration(ModifierSet.STATIC | ModifierSet.FINAL,
+					ASTHelper.createReferenceType("String", 0),
+					new VariableDeclarator(new VariableDeclaratorId(field), decrypt)));
+		}
+		return new FieldAccessExpr(new NameExpr(HOLDER_CLASS), field);
+	}
+
+	/** Number of literals replaced so far */
+	public int getEncryptedCount() {
+		return encryptedCount;
+	}
+
+	// Adds the holder class with the fields collected for a top level class.
+	private void addHolder(TypeDeclaration type) {
+		// Members of an interface are public and cannot be private
+		boolean isInterface = type instanceof ClassOrInterfaceDeclaration
+				&& ((ClassOrInterfaceDeclaration) type).isInterface();
+		int modifiers = ModifierSet.STATIC | ModifierSet.FINAL | (isInterface ? 0 : ModifierSet.PRIVATE);
+
+		ClassOrInterfaceDeclaration holder = new ClassOrInterfaceDeclaration(modifiers, false, HOLDER_CLASS);
+		for (FieldDeclaration declaration : holderDeclarations) {
+			ASTHelper.addMember(holder, declaration);
+		}
+		ASTHelper.addMember(type, holder);
+	}
+
+	/**
+	 * Plans the literals of a file which the visitor replaces.
+	 *
+	 * @param mode
+	 *            How the literals are encrypted. With HOLDER, the literals of
+	 *            annotation types are inlined instead; with a table the
+	 *            indices are set once the plan numbers the table.
+	 */
+	public static List<LiteralPlan> planLiterals(CompilationUnit cu, StringMode mode) {
+		LiteralPlanner planner = new LiteralPlanner(mode);
+		cu.accept(planner, null);
+		return planner.literals;
+	}
+
+	/**
+	 * Turns the escapes of a literal as written in the source, including
+	 * unicode and octal escapes, into the characters they stand for.
+	 */
+	private static String unescape(String text) {
+		if (text.indexOf('\\') == -1) {
+			return text;
+		}
+		StringBuilder sb = new StringBuilder(text.length());
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (c != '\\' || i + 1 >= text.length()) {
+				sb.append(c);
+				i++;
+				continue;
+			}
+			char e = text.charAt(i + 1);
+			i += 2;
+			switch (e) {
+			case 'b':
+				sb.append('\b');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 'u':
+				while (i < text.length() && text.charAt(i) == 'u') {
+					i++;
+				}
+				if (i + 4 <= text.length()) {
+					sb.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+					i += 4;
+				}
+				break;
+			default:
+				if (e >= '0' && e <= '7') {
+					// Up to three octal digits, at most \377
+					int value = e - '0';
+					int maxDigits = e <= '3' ? 2 : 1;
+					while (maxDigits-- > 0 && i < text.length() && text.charAt(i) >= '0' && text.charAt(i) <= '7') {
+						value = value * 8 + (text.charAt(i) - '0');
+						i++;
+					}
+					sb.append((char) value);
+				} else {
+					// \" \' \\
+					sb.append(e);
+				}
+				break;
+			}
+		}
+		return sb.toString();
+	}
+
+	// Finds the literals which can be replaced, leaving out those which have
+	// to stay constant, and numbers the holder fields of each top level class.
+	private static class LiteralPlanner extends VoidVisitorAdapter<Object> {
+		private final StringMode mode;
+		private final List<LiteralPlan> literals = new ArrayList<LiteralPlan>();
+		private Map<String, String> holderFields = new LinkedHashMap<String, String>();
+		private int annotationDepth = 0;
+
+		LiteralPlanner(StringMode mode) {
+			this.mode = mode.usesTable() ? StringMode.TABLE : mode;
+		}
+
+		@Override
+		public void visit(CompilationUnit n, Object arg) {
+			if (n.getTypes() != null) {
+				for (TypeDeclaration type : n.getTypes()) {
+					holderFields = new LinkedHashMap<String, String>();
+					type.accept(this, arg);
+				}
+			}
+		}
+
+		@Override
+		public void visit(StringLiteralExpr n, Object arg) {
+			// The value is the text between the quotes, so the escapes are
+			// turned into the characters the app would see
+			String value = unescape(n.getValue());
+			StringMode literalMode = mode == StringMode.HOLDER && annotationDepth > 0 ? StringMode.INLINE : mode;
+			String field = null;
+			if (literalMode == StringMode.HOLDER) {
+				field = holderFields.get(value);
+				if (field == null) {
+					field = HOLDER_FIELD_PREFIX + holderFields.size();
+					holderFields.put(value, field);
+				}
+			}
+			literals.add(new LiteralPlan(n.getBeginLine(), n.getBeginColumn(), value, literalMode, field));
+		}
+
+		// Case labels have to stay constant expressions, so only the
+		// statements of a switch entry are visited.
+		@Override
+		public void visit(SwitchEntryStmt n, Object arg) {
+			if (n.getStmts() != null) {
+				for (Statement stmt : n.getStmts()) {
+					stmt.accept(this, arg);
+				}
+			}
+		}
+
+		// Annotation values also have to be constant.
+		@Override
+		public void visit(NormalAnnotationExpr n, Object arg) {
+		}
+
+		@Override
+		public void visit(SingleMemberAnnotationExpr n, Object arg) {
+		}
+
+		// So do the default values of annotation methods.
+		@Override
+		public void visit(AnnotationMemberDeclaration n, Object arg) {
+		}
+
+		// Members of an annotation type are public, so rather than adding a
+		// holder to it its constants are decrypted inline.
+		@Override
+		public void visit(AnnotationDeclaration n, Object arg) {
+			annotationDepth++;
+			super.visit(n, arg);
+			annotationDepth--;
+		}
+	}
+}
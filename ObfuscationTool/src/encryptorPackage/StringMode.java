@@ -0,0 +1,43 @@
+package encryptorPackage;
+
+/**
+ * How the encrypted string literals end up in the obfuscated app.
+ */
+public enum StringMode {
+
+	/** Each literal becomes StringDecoder.decrypt("<encrypted literal>") */
+	INLINE,
+
+	/**
+	 * Each literal becomes StringDecoder.get(index) into one encrypted table
+	 * of every literal of the project
+	 */
+	TABLE,
+
+	/** Like TABLE, with the table compressed before it is encrypted */
+	COMPRESSED_TABLE,
+
+	/**
+	 * Each distinct literal of a class is decrypted once into a field of a
+	 * lazily initialised holder class, and call sites read the field
+	 */
+	HOLDER;
+
+	public boolean usesTable() {
+		return this == TABLE || this == COMPRESSED_TABLE;
+	}
+
+	/** Name of the mode on the command line, e.g. compressed-table */
+	public String getOptionName() {
+		return name().toLowerCase().replace('_', '-');
+	}
+
+	public static StringMode fromOptionName(String name) {
+		for (StringMode mode : values()) {
+			if (mode.getOptionName().equals(name)) {
+				return mode;
+			}
+		}
+		throw new IllegalArgumentException("Unknown string mode " + name);
+	}
+}
@@ -1,129 +1,100 @@
 package encryptorPackage;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.security.Key;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
 
 public class StringReplacer {
 
-	private static FileReader fr;
-	private static BufferedReader br;
-	private static FileWriter fw;
-	private static BufferedWriter bw;
-	private static String line;
-	private static boolean packageBool;
 	private static final String ALGORITHM = "AES";
 
-	public static void Replace(File f, String keyString) {
-
-		packageBool = false;
-
-		try {
-			fr = new FileReader(f);
-			br = new BufferedReader(fr);
-
-			StringBuffer sb = new StringBuffer();
-
-			while ((line = br.readLine()) != null) {
-
-				// Search line for any quotations marks as these are strings it
-				// can encrypt. This will also ignore any escaped quotation
-				// marks (\")
-				Pattern p = Pattern.compile("\"(([^\\\\\"]|\\\\\"|\\\\(?!\"))*)\"");
-
-				Matcher m = p.matcher(line);
-
-				while (m.find()) {
-					// System.out.println("FOUND: " + m.group());
-
-					try {
-						// Replaces all strings found with the StringDecryptor
-						// method and an encrypted version of the string
-						line = line.replaceAll(m.group().toString(), "StringDecoder.decrypt(\""
-								+ encrypt(m.group().substring(1, m.group().length() - 1), keyString) + "\")");
-
-						// DEBUG STATEMENTS FOR TESTING
-						// System.out.println("OUTPUTTED LINE IS: " + line);
-						// String testEncryption =
-						// encrypt(m.group().substring(1, m.group().length() -
-						// 1), keyString);
-						// System.out.println("ENCRYPTED STRING: " +
-						// testEncryption);
-						// String testDecryption = decrypt(testEncryption,
-						// keyString);
-						// System.out.println("DECRYPTED STRING: " +
-						// testDecryption);
-
-						// If there is a pattern syntax and it can't handle the
-						// string input, just ignore it
-					} catch (PatternSyntaxException e) {
-					}
-
-				}
-				// Can remove \n to make it less readable
-				sb.append(line + "\n");
-
-				// Add package name to file so it can user String Decoder
-				// method.
-				if (packageBool == false) {
-					sb.append("import xyz.StringDecoder;\n");
-					packageBool = true;
-				}
-			}
-
-			try {
-				fw = new FileWriter(f, false);
-				bw = new BufferedWriter(fw);
-
-				bw.write(sb.toString());
-				br.close();
-
-			} catch (FileNotFoundException e) {
-				System.out.println("File was not found!");
-			} catch (IOException e) {
-				System.out.println("No file found!");
-			}
-
-			bw.close();
-		} catch (FileNotFoundException e) {
-			System.out.println("Error1!");
-		} catch (IOException e) {
-			System.out.println("Error2!");
-		}
-	}
-
 	// Encrypts the string using the secret key
 	public static String encrypt(final String valueEnc, final String secKey) {
 
 		String encryptedValue = null;
 
 		try {
-			final Key key = generateKeyFromString(secKey);
-			final Cipher c = Cipher.getInstance(ALGORITHM);
-			c.init(Cipher.ENCRYPT_MODE, key);
-			final byte[] encValue = c.doFinal(valueEnc.getBytes());
+			final Cipher c = getCipher(encryptCipher, Cipher.ENCRYPT_MODE, getKey(secKey));
+			final byte[] encValue = c.doFinal(valueEnc.getBytes("UTF-8"));
 			encryptedValue = Base64.getEncoder().encodeToString(encValue);
 		} catch (Exception ex) {
 			System.out.println("The Exception is=" + ex);
+			encryptCipher.remove();
 
 		}
 		return encryptedValue;
 	}
 
+	// Encrypts raw bytes using the secret key, for the string table
+	public static byte[] encryptBytes(final byte[] value, final String secKey) throws Exception {
+		try {
+			return getCipher(encryptCipher, Cipher.ENCRYPT_MODE, getKey(secKey)).doFinal(value);
+		} catch (Exception ex) {
+			encryptCipher.remove();
+			throw ex;
+		}
+	}
+
+	// The same key encrypts every string of a run, so the key derived from it
+	// is kept instead of hashing the key string for each literal.
+	private static volatile DerivedKey lastKey;
+
+	// Ciphers are not thread safe, so each thread of the parallel pass keeps
+	// its own, initialised with the key it last used. A cipher which failed is
+	// dropped in case it was left half way through an operation.
+	private static final ThreadLocal<KeyedCipher> encryptCipher = new ThreadLocal<KeyedCipher>();
+	private static final ThreadLocal<KeyedCipher> decryptCipher = new ThreadLocal<KeyedCipher>();
+
+	private static class DerivedKey {
+		final String secKey;
+		final Key key;
+
+		DerivedKey(String secKey, Key key) {
+			this.secKey = secKey;
+			this.key = key;
+		}
+	}
+
+	private static class KeyedCipher {
+		final Cipher cipher;
+		Key key;
+
+		KeyedCipher(Cipher cipher) {
+			this.cipher = cipher;
+		}
+	}
+
+	// Gets the key of the key string, only deriving it when the key string
+	// changes.
+	private static Key getKey(final String secKey) {
+		DerivedKey derived = lastKey;
+		if (derived == null || !derived.secKey.equals(secKey)) {
+			derived = new DerivedKey(secKey, generateKeyFromString(secKey));
+			lastKey = derived;
+		}
+		return derived.key;
+	}
+
+	// Gets the cipher of this thread, set up for the key. doFinal resets the
+	// cipher to its initialised state, so it only has to be initialised again
+	// when the key changes.
+	private static Cipher getCipher(ThreadLocal<KeyedCipher> cipherOfThread, int mode, Key key) throws Exception {
+		KeyedCipher keyed = cipherOfThread.get();
+		if (keyed == null) {
+			keyed = new KeyedCipher(Cipher.getInstance(ALGORITHM));
+			cipherOfThread.set(keyed);
+		}
+		if (keyed.key != key) {
+			keyed.cipher.init(mode, key);
+			keyed.key = key;
+		}
+		return keyed.cipher;
+	}
+
 	// Generates an actual key from the secret key
 	private static Key generateKeyFromString(final String secKey) {
 
@@ -151,14 +122,13 @@ public class StringReplacer {
 
 		try {
 
-			final Key key = generateKeyFromString(secretKey);
-			final Cipher c = Cipher.getInstance(ALGORITHM);
-			c.init(Cipher.DECRYPT_MODE, key);
+			final Cipher c = getCipher(decryptCipher, Cipher.DECRYPT_MODE, getKey(secretKey));
 			final byte[] decorVal = Base64.getDecoder().decode(encryptedValue);
 			final byte[] decValue = c.doFinal(decorVal);
-			decryptedValue = new String(decValue);
+			decryptedValue = new String(decValue, "UTF-8");
 		} catch (Exception ex) {
 			System.out.println("The Exception is: " + ex);
+			decryptCipher.remove();
 		}
 		return decryptedValue;
 	}
@@ -0,0 +1,139 @@
+package encryptorPackage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import classPackageObfuscate.SourceFiles;
+
+/**
+ * Collects every string literal of a project into one table, for
+ * StringMode.TABLE. Call sites read a literal with StringDecoder.get(index)
+ * instead of carrying their own encrypted copy.
+ *
+ * The literals are numbered in sorted order once all of them are known, so
+ * the indices are the same on every run whatever order the files were
+ * processed in.
+ *
+ * The table is written into the xyz package as the StringTable class:
+ *
+ * <pre>
+ * int count, int offset[count + 1], UTF-8 bytes of every literal
+ * </pre>
+ *
+ * optionally deflated, then encrypted as a whole and stored as Base64
+ * chunks, each short enough to be a single constant in a class file.
+ */
+public class StringTableBuilder {
+
+	// Characters in a chunk of the table, below the 65535 byte limit of a
+	// constant in a class file
+	private static final int CHUNK_SIZE = 16384;
+
+	private final Set<String> values = new TreeSet<String>();
+	private Map<String, Integer> indices;
+
+	/** Adds a literal, called from several threads while files are parsed */
+	public synchronized void add(String value) {
+		if (indices != null) {
+			throw new IllegalStateException("The table has already been numbered");
+		}
+		values.add(value);
+	}
+
+	/** Numbers the literals, after which no more can be added */
+	public synchronized void freeze() {
+		indices = new HashMap<String, Integer>();
+		for (String value : values) {
+			indices.put(value, indices.size());
+		}
+	}
+
+	public synchronized int indexOf(String value) {
+		Integer index = indices.get(value);
+		if (index == null) {
+			throw new IllegalArgumentException("Literal was not collected: " + value);
+		}
+		return index;
+	}
+
+	public synchronized int size() {
+		return values.size();
+	}
+
+	/**
+	 * Writes the StringTable class into the xyz package.
+	 *
+	 * @param generatedDirectory
+	 *            Folder of the xyz package.
+	 */
+	public void write(File generatedDirectory, String keyString, boolean compress) throws Exception {
+		SourceFiles.write(new File(generatedDirectory, "StringTable.java"), toSource(keyString, compress));
+	}
+
+	/** Source of the StringTable class */
+	public synchronized String toSource(String keyString, boolean compress) throws Exception {
+		byte[] table = encode();
+		if (compress) {
+			table = deflate(table);
+		}
+		String encrypted = Base64.getEncoder().encodeToString(StringReplacer.encryptBytes(table, keyString));
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("package xyz;\n");
+		sb.append("final class StringTable {\n");
+		sb.append("static final int COUNT = " + values.size() + ";\n");
+		sb.append("static final boolean COMPRESSED = " + compress + ";\n");
+		sb.append("static final String[] CHUNKS = {\n");
+		for (int i = 0; i < encrypted.length(); i += CHUNK_SIZE) {
+			sb.append("\"" + encrypted.substring(i, Math.min(encrypted.length(), i + CHUNK_SIZE)) + "\",\n");
+		}
+		sb.append("};\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private byte[] encode() throws IOException {
+		byte[][] bytes = new byte[values.size()][];
+		int i = 0;
+		for (String value : values) {
+			bytes[i++] = value.getBytes("UTF-8");
+		}
+
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(buffer);
+		out.writeInt(bytes.length);
+		int offset = 0;
+		for (byte[] b : bytes) {
+			out.writeInt(offset);
+			offset += b.length;
+		}
+		out.writeInt(offset);
+		for (byte[] b : bytes) {
+			out.write(b);
+		}
+		out.close();
+		return buffer.toByteArray();
+	}
+
+	private static byte[] deflate(byte[] data) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		try {
+			DeflaterOutputStream out = new DeflaterOutputStream(buffer, deflater);
+			out.write(data);
+			out.close();
+		} finally {
+			deflater.end();
+		}
+		return buffer.toByteArray();
+	}
+}
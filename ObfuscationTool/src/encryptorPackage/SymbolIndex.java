@@ -0,0 +1,163 @@
+package encryptorPackage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import ArgumentObfuscator.ArgumentCarriers;
+import ArgumentObfuscator.ArgumentObfuscator;
+
+/**
+ * Symbols of the whole project, gathered while the sources are parsed so
+ * that the passes look them up instead of each scanning the project again:
+ * packages, method declarations, call sites and the Android components of
+ * the manifest.
+ *
+ * Methods follow the rules of ArgumentObfuscator: a declaration counts if it
+ * has parameters, is not marked @Override and is not inside another method; a
+ * call counts unless it is on super, including calls nested in the arguments
+ * of another call. These are exactly the declarations and calls it rewrites.
+ *
+ * Files can be added from several threads at once. The lookups are for once
+ * every file has been added.
+ */
+public class SymbolIndex {
+
+	private final Set<String> packages = new HashSet<String>();
+	private final Set<String> declaredMethods = new HashSet<String>();
+	private final Set<String> calledMethods = new HashSet<String>();
+	private final List<String> methodSignatures = new ArrayList<String>();
+	private final Map<String, String> components = new HashMap<String, String>();
+	private String rootPackage = "";
+
+	/** Adds the symbols of a parsed file */
+	public void add(CompilationUnit cu) {
+		// Collected on the calling thread, only the merge is locked
+		Collector collector = new Collector();
+		cu.accept(collector, null);
+		synchronized (this) {
+			if (collector.pkg.length() > 0) {
+				packages.add(collector.pkg);
+			}
+			declaredMethods.addAll(collector.declared);
+			calledMethods.addAll(collector.called);
+			methodSignatures.addAll(collector.signatures);
+		}
+	}
+
+	/**
+	 * Adds the methods of a file which is not parsed again, e.g. from the
+	 * cache of an incremental run.
+	 */
+	public synchronized void addMethods(Collection<String> declared, Collection<String> called) {
+		declaredMethods.addAll(declared);
+		calledMethods.addAll(called);
+	}
+
+	/** Adds the signatures of declarations in files which are not parsed again */
+	public synchronized void addMethodSignatures(Collection<String> signatures) {
+		methodSignatures.addAll(signatures);
+	}
+
+	/** Adds packages of files which are not parsed again */
+	public synchronized void addPackages(Collection<String> packageNames) {
+		packages.addAll(packageNames);
+	}
+
+	/**
+	 * Records what the manifest declares.
+	 *
+	 * @param rootPackage
+	 *            Package of the app.
+	 * @param componentNames
+	 *            Fully declared component names to their obfuscated names.
+	 */
+	public synchronized void addManifest(String rootPackage, Map<String, String> componentNames) {
+		this.rootPackage = rootPackage;
+		components.putAll(componentNames);
+	}
+
+	/** Every package of the project, including the root package */
+	public synchronized Set<String> getPackages() {
+		Set<String> all = new HashSet<String>(packages);
+		if (!rootPackage.isEmpty()) {
+			all.add(rootPackage);
+		}
+		return all;
+	}
+
+	public synchronized Set<String> getDeclaredMethods() {
+		return new HashSet<String>(declaredMethods);
+	}
+
+	public synchronized Set<String> getCalledMethods() {
+		return new HashSet<String>(calledMethods);
+	}
+
+	/**
+	 * Signatures of the declarations counted in getDeclaredMethods, as made by
+	 * ArgumentCarriers.signatureOf, one for each declaration.
+	 */
+	public synchronized List<String> getMethodSignatures() {
+		return new ArrayList<String>(methodSignatures);
+	}
+
+	/**
+	 * Names of the methods which are both declared and called in the
+	 * project, whose arguments ArgumentObfuscator hides.
+	 */
+	public synchronized Set<String> getMethodsToModify() {
+		Set<String> methods = new HashSet<String>(declaredMethods);
+		methods.retainAll(calledMethods);
+		return methods;
+	}
+
+	/** Fully declared component names to their obfuscated names */
+	public synchronized Map<String, String> getComponents() {
+		return Collections.unmodifiableMap(new HashMap<String, String>(components));
+	}
+
+	// Symbols of a single file.
+	private static class Collector extends VoidVisitorAdapter<Object> {
+		private String pkg = "";
+		private final Set<String> declared = new HashSet<String>();
+		private final Set<String> called = new HashSet<String>();
+		private final List<String> signatures = new ArrayList<String>();
+		private int methodDepth = 0;
+
+		@Override
+		public void visit(PackageDeclaration n, Object arg) {
+			pkg = n.getName().toString();
+		}
+
+		@Override
+		public void visit(MethodDeclaration n, Object arg) {
+			if (methodDepth == 0 && !n.getParameters().isEmpty() && !ArgumentObfuscator.isOverride(n)) {
+				declared.add(n.getName());
+				signatures.add(ArgumentCarriers.signatureOf(n));
+			}
+			methodDepth++;
+			super.visit(n, arg);
+			methodDepth--;
+		}
+
+		@Override
+		public void visit(MethodCallExpr n, Object arg) {
+			if (n.getScope() == null || !n.getScope().toString().equals("super")) {
+				called.add(n.getName());
+			}
+			super.visit(n, arg);
+		}
+	}
+}
@@ -6,11 +6,6 @@ import javax.swing.filechooser.FileSystemView;
 
 import java.util.List;
 
-import org.apache.commons.io.FileUtils;
-
-import ArgumentObfuscator.ArgumentObfuscator;
-import classPackageObfuscate.ClassRenamer;
-
 import java.awt.*;
 import java.awt.event.*;
 import java.io.File;
@@ -23,6 +18,8 @@ public class ToolGUI {
 	static JButton runButton, inputButton, outputButton;
 	static JLabel inputLabel, outputLabel, userMessage;
 	static JTextField inputLocationAddress, outputLocationAddress;
+	static JCheckBox incrementalCheckBox;
+	static JCheckBox skipBuildCheckBox;
 	static Insets insets;
 	static JPanel inputPanel, outputPanel;
 	static JFileChooser inputFileChooser, outputFileChooser;
@@ -77,6 +74,9 @@ public class ToolGUI {
 			}
 		});
 
+		incrementalCheckBox = new JCheckBox("Only redo changed files");
+		skipBuildCheckBox = new JCheckBox("Skip build folders");
+
 		runButton = new JButton("OBFUSCATE CODE");
 
 		userMessage = new JLabel("Please enter the location paths...");
@@ -92,6 +92,8 @@ public class ToolGUI {
 		outputPanel.add(outputLabel);
 		outputPanel.add(outputLocationAddress);
 		outputPanel.add(outputButton);
+		outputPanel.add(incrementalCheckBox);
+		outputPanel.add(skipBuildCheckBox);
 		pane.add(outputPanel);
 
 		userMessage.setHorizontalAlignment(JLabel.CENTER);
@@ -135,11 +137,8 @@ public class ToolGUI {
 			File srcDir = new File(inputLocationAddress.getText());
 			File destDir = new File(outputLocationAddress.getText());
 
-			if (!destDir.exists()) {
-				destDir.mkdir();
-			}
-
-			obfWorker = new ObfuscatorWorker(srcDir, destDir, userMessage, runButton);
+			obfWorker = new ObfuscatorWorker(srcDir, destDir, userMessage, runButton,
+					incrementalCheckBox.isSelected(), skipBuildCheckBox.isSelected());
 			obfWorker.execute();
 
 		}
@@ -158,30 +157,41 @@ class ObfuscatorWorker extends SwingWorker<Void, String> {
 	private JLabel userMessage;
 	private boolean errorFlag = false;
 	private JButton runButton;
+	private boolean incremental;
+	private boolean skipBuild;
+	private String summary = "";
 
-	public ObfuscatorWorker(File s, File d, JLabel uM, JButton rb) {
+	public ObfuscatorWorker(File s, File d, JLabel uM, JButton rb, boolean inc, boolean sb) {
 		userMessage = uM;
 		srcDir = s;
 		destDir = d;
 		runButton = rb;
+		incremental = inc;
+		skipBuild = sb;
 	}
 
 	@Override
 	protected Void doInBackground() {
 
 		try {
-			FileUtils.copyDirectory(srcDir, destDir);
-
-			publish("Obfuscating...");
-
-			ClassRenamer.renameClassesInXML(destDir.getAbsolutePath());
-			
-			ObfuscationCoordinator.Obfuscate(destDir.getAbsolutePath() + "\\app\\src\\main");
-			
-			//This obfuscation only works with our project. Uncomment this if obfuscating our app.
-			//ArgumentObfuscator.ObfuscateArguments(destDir.getAbsolutePath() + "\\app\\src\\main\\java");
-
-			ProGuardEnabler.setMinifyEnabledToTrue(destDir.getAbsolutePath() + "\\app\\build.gradle");
+			//Argument obfuscation is off by default. Add options.setObfuscateArguments(true) to turn it on.
+			ObfuscationOptions options = new ObfuscationOptions();
+			options.setIncremental(incremental);
+			options.setSkipBuildOutputs(skipBuild);
+			ObfuscationCoordinator.ObfuscateProject(srcDir, destDir, options, new ProgressListener() {
+				@Override
+				public void stageStarted(String stage) {
+					if (stage.equals(ProgressListener.RENAME)) {
+						publish("Obfuscating...");
+					}
+				}
+
+				@Override
+				public void stageFinished(String stage, RunReport report) {
+					summary = report.getSummary();
+					publish("Finished " + stage + ": " + summary);
+				}
+			});
 		} catch (Exception e) {
 			errorFlag = true;
 		}
@@ -199,7 +209,7 @@ class ObfuscatorWorker extends SwingWorker<Void, String> {
 	@Override
 	protected void done() {
 		if (errorFlag == false) {
-			userMessage.setText("Done! Now build release version in Android Studios!");
+			userMessage.setText("Done! " + summary + ". Now build release version in Android Studios!");
 		} else {
 			runButton.setEnabled(true);
 			userMessage.setText("ERROR!");
@@ -0,0 +1,91 @@
+package encryptorPackage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.VariableDeclaratorId;
+import com.github.javaparser.ast.expr.AnnotationExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.VariableDeclarationExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.CatchClause;
+import com.github.javaparser.ast.stmt.IfStmt;
+import com.github.javaparser.ast.stmt.Statement;
+import com.github.javaparser.ast.stmt.ThrowStmt;
+import com.github.javaparser.ast.stmt.TryStmt;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.Type;
+import com.github.javaparser.ast.visitor.ModifierVisitorAdapter;
+
+/**
+ * AST version of TryCatchReplacer. Hides the branches of every if statement
+ * behind an exception:
+ *
+ * <pre>
+ * try {
+ *     if (condition) {
+ *         ...
+ *     } else {
+ *         throw new NullPointerException();
+ *     }
+ * } catch (NullPointerException generatedException1) {
+ *     // the else branch, if any
+ * }
+ * </pre>
+ *
+ * An else if becomes a try statement of its own inside the catch block. Ifs
+ * without braces and conditions over several lines are handled like any
+ * other, and each node is only visited once. A visitor keeps the numbering of
+ * a single file, so each file needs a new one.
+ */
+public class TryCatchVisitor extends ModifierVisitorAdapter<Object> {
+
+	private static final String EXCEPTION = "NullPointerException";
+	private static final String EXCEPTION_NAME = "generatedException";
+
+	private int exceptionCount = 0;
+
+	@Override
+	public Node visit(IfStmt n, Object arg) {
+		// Nested ifs and else ifs are rewritten first
+		super.visit(n, arg);
+
+		exceptionCount++;
+
+		List<Statement> throwStmt = new ArrayList<Statement>();
+		throwStmt.add(new ThrowStmt(
+				new ObjectCreationExpr(null, new ClassOrInterfaceType(EXCEPTION), new ArrayList<Expression>())));
+		List<Statement> tryBody = new ArrayList<Statement>();
+		tryBody.add(new IfStmt(n.getCondition(), toBlock(n.getThenStmt()), new BlockStmt(throwStmt)));
+
+		List<Type> types = new ArrayList<Type>();
+		types.add(new ClassOrInterfaceType(EXCEPTION));
+		BlockStmt catchBlock = n.getElseStmt() != null ? toBlock(n.getElseStmt())
+				: new BlockStmt(new ArrayList<Statement>());
+		List<CatchClause> catchClauses = new ArrayList<CatchClause>();
+		catchClauses.add(new CatchClause(0, new ArrayList<AnnotationExpr>(), types,
+				new VariableDeclaratorId(EXCEPTION_NAME + exceptionCount), catchBlock));
+
+		TryStmt tryStmt = new TryStmt(new BlockStmt(tryBody), catchClauses, null);
+		tryStmt.setResources(new ArrayList<VariableDeclarationExpr>());
+		tryStmt.setComment(n.getComment());
+		return tryStmt;
+	}
+
+	/** Number of if statements rewritten so far */
+	public int getRewrittenCount() {
+		return exceptionCount;
+	}
+
+	// The statement itself if it is a block, otherwise a block holding it.
+	private static BlockStmt toBlock(Statement statement) {
+		if (statement instanceof BlockStmt) {
+			return (BlockStmt) statement;
+		}
+		List<Statement> statements = new ArrayList<Statement>();
+		statements.add(statement);
+		return new BlockStmt(statements);
+	}
+}